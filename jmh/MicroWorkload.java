@@ -0,0 +1,222 @@
+import java.util.HashMap;
+import java.util.Random;
+
+import bench.HotPaths;
+
+/**
+ * A population captured from a multiplexer or maze problem with the states
+ * to query it with, measured by the JMH benchmarks in bench.MicroBenchmark.
+ * The workload name gives the problem and the number of training trials,
+ * e.g. MP11@30000 or Woods2@2000.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ * @see bench.MicroBenchmark
+ */
+public class MicroWorkload implements HotPaths {
+	/**
+	 * The maximal population size and the combining period of the
+	 * multiplexers by their number of address bits.
+	 */
+	private static final int[] MAX_POP_SIZE = { 0, 0, 400, 800, 1000, 10000 };
+	private static final int[] TCOMB = { 0, 0, 100, 200, 500, 5000 };
+
+	private XCSManager learner;
+	private XCSConfig config;
+	private int numberOfActions;
+	private double[][] states;
+	private int[] answers;
+
+	/**
+	 * Buffers of match(), the matching classifiers and their actions.
+	 */
+	private XClassifier[] matching;
+	private boolean[] covered;
+
+	/**
+	 * The copy matchSet() works on and the match set it forms again and
+	 * again.
+	 */
+	private XClassifierSet matchSetCopy, matchSet;
+
+	/**
+	 * The prepared match sets of predictionArray().
+	 */
+	private XClassifierSet[] matchSets;
+
+	/**
+	 * The copy updateSet() works on and the prepared action set.
+	 */
+	private XClassifierSet updateCopy, actionSet;
+	private int updateState, updateAction;
+
+	/**
+	 * The copies delete() and combine() work on.
+	 */
+	private XClassifierSet deletionCopy, combiningCopy;
+
+	/**
+	 * Captures the population of the named workload.
+	 * 
+	 * @param name
+	 *            MP followed by the length of a multiplexer or the name of a
+	 *            maze in Environments, then @ and the number of trials.
+	 * @throws IllegalArgumentException
+	 *             if the name does not denote a workload.
+	 */
+	public MicroWorkload(String name) {
+		int at = name.indexOf('@');
+		if (at < 0)
+			throw new IllegalArgumentException("Workload " + name + " lacks the number of trials.");
+		String problem = name.substring(0, at);
+		int trials = Integer.parseInt(name.substring(at + 1));
+		if (problem.startsWith("MP")) {
+			int length = Integer.parseInt(problem.substring(2));
+			int addressBits = 2;
+			while (addressBits + (1 << addressBits) < length)
+				addressBits++;
+			if (addressBits + (1 << addressBits) != length || addressBits >= MAX_POP_SIZE.length)
+				throw new IllegalArgumentException("Workload " + name + " is no supported multiplexer.");
+			multiplexer(addressBits, trials);
+		} else
+			maze(problem, trials);
+
+		XClassifierSet pop = learner.pop;
+		matching = new XClassifier[pop.getSize()];
+		covered = new boolean[numberOfActions + 1];
+		matchSetCopy = copy();
+		matchSets = new XClassifierSet[64];
+		XClassifierSet copy = copy();
+		for (int i = 0; i < matchSets.length; i++)
+			matchSets[i] = new XClassifierSet(states[i], copy, 0, numberOfActions,
+					config.maxPopSize, false);
+		updateCopy = copy();
+	}
+
+	/**
+	 * Returns a copy of the population that can be changed freely.
+	 */
+	private XClassifierSet copy() {
+		return learner.pop.snapshot(new HashMap<XClassifier, XClassifier>());
+	}
+
+	public int match(int state) {
+		return learner.pop.collectMatching(states[state], matching, covered);
+	}
+
+	public int matchSet(int state) {
+		if (matchSet == null)
+			matchSet = new XClassifierSet(states[state], matchSetCopy, 0, numberOfActions,
+					config.maxPopSize, false);
+		else
+			matchSet.formMatchSet(states[state], matchSetCopy, 0, numberOfActions,
+					config.maxPopSize, false);
+		return matchSet.getSize();
+	}
+
+	public int predictionArray(int state) {
+		XClassifierSet set = matchSets[state & (matchSets.length - 1)];
+		PredictionArray pa = new PredictionArray(set, numberOfActions, XCSConstants.minExp,
+				config.random);
+		return pa.luckyBestActionWinner(numberOfActions)
+				+ pa.exploreActionWinner(numberOfActions, XCSConstants.minExp);
+	}
+
+	public void prepareUpdate(int state) {
+		updateState = state;
+		updateAction = state % numberOfActions;
+		XClassifierSet set = new XClassifierSet(states[state], updateCopy, 0, numberOfActions,
+				config.maxPopSize, false);
+		actionSet = new XClassifierSet(set, updateAction);
+	}
+
+	public void updateSet() {
+		double reward = (answers != null && answers[updateState] == updateAction) ? 1000 : 0;
+		actionSet.updateSet(0., states[updateState], updateAction, reward);
+	}
+
+	public void prepareDeletion() {
+		if (deletionCopy == null
+				|| deletionCopy.getNumerositySum() < learner.pop.getNumerositySum() / 2 + 1)
+			deletionCopy = copy();
+	}
+
+	public void delete(int state) {
+		deletionCopy.deleteFromPopulation(states[state], 1);
+	}
+
+	public void prepareCombining() {
+		combiningCopy = copy();
+		for (int a = 0; a < numberOfActions; a++)
+			combiningCopy.markNiche(a, true);
+	}
+
+	public int combine() {
+		combiningCopy.combine(numberOfActions);
+		return combiningCopy.getSize();
+	}
+
+	/**
+	 * Captures the population of a multiplexer problem after the given
+	 * number of trials, alternating explore and exploit trials like MPX.
+	 */
+	private void multiplexer(int addressBits, int trials) {
+		int length = addressBits + (1 << addressBits);
+		config = new XCSConfig(20);
+		config.maxPopSize = MAX_POP_SIZE[addressBits];
+		config.Tcomb = TCOMB[addressBits];
+		numberOfActions = 2;
+		learner = new XCSManager(2, config, false, null);
+
+		Random input = new Random(1);
+		double[] state = new double[length];
+		for (int trial = 0; trial < trials; trial++) {
+			for (int i = 0; i < length; i++)
+				state[i] = input.nextInt(2);
+			int action = learner.nextAction(state, trial % 2 == 0);
+			learner.update(action == multiplexerAnswer(state, addressBits) ? 1000 : 0);
+		}
+
+		states = new double[STATES][length];
+		answers = new int[STATES];
+		for (int s = 0; s < STATES; s++) {
+			for (int i = 0; i < length; i++)
+				states[s][i] = input.nextInt(2);
+			answers[s] = multiplexerAnswer(states[s], addressBits);
+		}
+	}
+
+	/**
+	 * Returns the correct output of the multiplexer for the state.
+	 */
+	private static int multiplexerAnswer(double[] state, int addressBits) {
+		int pos = 0;
+		for (int i = 0; i < addressBits; i++)
+			pos = 2 * pos + (int) state[i];
+		return (int) state[addressBits + pos];
+	}
+
+	/**
+	 * Captures the population of a maze after the given number of trials,
+	 * alternating explore and exploit trials like ENV.
+	 */
+	private void maze(String name, int trials) {
+		MazeEnvironment env = new MazeEnvironment("Environments/" + name + ".txt", 3);
+		config = new XCSConfig(99);
+		config.maxPopSize = 800;
+		config.Tcomb = 100;
+		numberOfActions = env.getNrActions();
+		learner = new XCSManager(env, config, false, null);
+
+		int[] stepsToGoal = new int[50];
+		double[] sysError = new double[50];
+		for (int trial = 0, explore = 0; trial <= trials; trial += explore) {
+			explore = (explore + 1) % 2;
+			learner.doOneMultiStep(env.resetState(), explore, stepsToGoal, sysError, trial, 0);
+		}
+
+		states = new double[STATES][];
+		for (int s = 0; s < STATES; s++)
+			states[s] = env.resetState();
+	}
+}
@@ -0,0 +1,79 @@
+package bench;
+
+/**
+ * The hot paths of the learner on one captured population, as measured by
+ * MicroBenchmark. JMH only accepts benchmarks in named packages, which cannot
+ * refer to the learner in the default package, so the benchmarks drive it
+ * through this interface, implemented by MicroWorkload in the default
+ * package.
+ *
+ * The operations take the number of one of the prepared states of the
+ * workload. Operations changing the population work on copies of it, which
+ * the prepare methods set up outside the measurement.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ */
+public interface HotPaths {
+	/**
+	 * The number of prepared states per workload, a power of two.
+	 */
+	int STATES = 1024;
+
+	/**
+	 * Scans the packed condition rows of the population for the classifiers
+	 * matching the state, as done when forming a match set.
+	 *
+	 * @return the number of matching classifiers.
+	 */
+	int match(int state);
+
+	/**
+	 * Forms the match set of the state on a copy of the population.
+	 *
+	 * @return the size of the match set.
+	 */
+	int matchSet(int state);
+
+	/**
+	 * Builds the prediction array of one of 64 prepared match sets and
+	 * selects the exploit and the explore action.
+	 *
+	 * @return the sum of both actions.
+	 */
+	int predictionArray(int state);
+
+	/**
+	 * Forms the action set updated by the next updateSet().
+	 */
+	void prepareUpdate(int state);
+
+	/**
+	 * Updates the prepared action set with the reward for its action.
+	 */
+	void updateSet();
+
+	/**
+	 * Replaces the copy deleted from by a fresh one once it lost half of its
+	 * micro-classifiers.
+	 */
+	void prepareDeletion();
+
+	/**
+	 * Deletes one micro-classifier from the copy.
+	 */
+	void delete(int state);
+
+	/**
+	 * Takes a fresh copy of the population with all niches marked for
+	 * combining.
+	 */
+	void prepareCombining();
+
+	/**
+	 * Combines the prepared copy.
+	 *
+	 * @return the size of the combined population.
+	 */
+	int combine();
+}
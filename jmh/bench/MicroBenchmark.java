@@ -0,0 +1,147 @@
+package bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * This class measures the hot paths of the learner with JMH on populations
+ * captured from multiplexer and maze problems: the scan of the packed
+ * condition rows, match set construction, prediction array construction with
+ * action selection, action set update, deletion and combining.
+ *
+ * A workload is named by its problem and the number of training trials, e.g.
+ * MP11@30000 or Woods2@2000. Its population is captured by training a learner
+ * with a fixed seed, so every run measures the same populations. The copies
+ * changed by updateSet, delete and combine are prepared per invocation;
+ * these operations take microseconds or more, so the overhead JMH adds for
+ * this stays small.
+ *
+ * Usage: gradle jmh --args="[benchmark regexp] [-p workload=...]"
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ * @see HotPaths
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MicroBenchmark {
+	/**
+	 * A captured population with the states to query it with.
+	 */
+	@State(Scope.Thread)
+	public static class Workload {
+		@Param({ "MP6@1000", "MP6@10000", "MP11@2000", "MP11@30000", "MP20@5000",
+				"MP20@50000", "MP37@20000", "Woods2@200", "Woods2@2000", "Maze6@200",
+				"Maze6@2000" })
+		public String workload;
+
+		HotPaths paths;
+		private int next = 0;
+
+		@Setup(Level.Trial)
+		public void capture() throws ReflectiveOperationException {
+			try {
+				paths = (HotPaths) Class.forName("MicroWorkload").getConstructor(String.class)
+						.newInstance(workload);
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw e;
+			}
+		}
+
+		/**
+		 * Returns the number of the next prepared state.
+		 */
+		int nextState() {
+			return next++ & (HotPaths.STATES - 1);
+		}
+	}
+
+	/*
+	 * The prepared states keep the paths they prepared, JMH hands the
+	 * benchmark method a workload instance of its own.
+	 */
+
+	@State(Scope.Thread)
+	public static class PreparedUpdate {
+		HotPaths paths;
+
+		@Setup(Level.Invocation)
+		public void prepare(Workload w) {
+			paths = w.paths;
+			paths.prepareUpdate(w.nextState());
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class PreparedDeletion {
+		HotPaths paths;
+		int state;
+
+		@Setup(Level.Invocation)
+		public void prepare(Workload w) {
+			paths = w.paths;
+			state = w.nextState();
+			paths.prepareDeletion();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class PreparedCombining {
+		HotPaths paths;
+
+		@Setup(Level.Invocation)
+		public void prepare(Workload w) {
+			paths = w.paths;
+			paths.prepareCombining();
+		}
+	}
+
+	@Benchmark
+	public void match(Workload w, Blackhole bh) {
+		bh.consume(w.paths.match(w.nextState()));
+	}
+
+	@Benchmark
+	public void matchSet(Workload w, Blackhole bh) {
+		bh.consume(w.paths.matchSet(w.nextState()));
+	}
+
+	@Benchmark
+	public void predictionArray(Workload w, Blackhole bh) {
+		bh.consume(w.paths.predictionArray(w.nextState()));
+	}
+
+	@Benchmark
+	public void updateSet(PreparedUpdate update) {
+		update.paths.updateSet();
+	}
+
+	@Benchmark
+	public void deleteFromPopulation(PreparedDeletion deletion) {
+		deletion.paths.delete(deletion.state);
+	}
+
+	@Benchmark
+	public void combine(PreparedCombining combining, Blackhole bh) {
+		bh.consume(combining.paths.combine());
+	}
+}
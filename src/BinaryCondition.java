@@ -0,0 +1,189 @@
+/**
+ * This class provides the bit-packed form of binary conditions. A condition
+ * whose intervals are all [0.0], [1.0] or [0.0..1.0] is stored in a long array
+ * of 2*w words, w = ceil(length/64): the first w words hold the care mask (bit
+ * set if the attribute is specified), the second w words hold the specified
+ * values. A binary state is packed into w value words. Matching, overlapping,
+ * subsumption and combining then take a few logical operations per 64
+ * attributes instead of two double comparisons per attribute.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ */
+public class BinaryCondition {
+
+	/**
+	 * Returns the number of words needed for the given number of attributes.
+	 */
+	public static int words(int attributes) {
+		return (attributes + 63) >>> 6;
+	}
+
+	/**
+	 * Packs a condition given as interval pairs.
+	 * 
+	 * @param elements
+	 *            The lower and upper bounds of the condition.
+	 * @return the packed condition, or null if the condition is not binary.
+	 */
+	public static long[] pack(double[] elements) {
+		int attributes = elements.length / 2;
+		int words = words(attributes);
+		long[] cond = new long[2 * words];
+
+		for (int i = 0; i < attributes; i++) {
+			double lower = elements[2*i];
+			double upper = elements[2*i+1];
+			long bit = 1L << i;
+			if (lower == upper) {
+				if (lower == 1.0)
+					cond[words + (i >>> 6)] |= bit;
+				else if (lower != 0.0)
+					return null;
+				cond[i >>> 6] |= bit;
+			} else if (lower != 0.0 || upper != 1.0)
+				return null;
+		}
+		return cond;
+	}
+
+	/**
+	 * Packs a binary state into the given value words.
+	 * 
+	 * @return false if the state is not binary or does not fit into out.
+	 */
+	public static boolean packState(double[] state, long[] out) {
+		if (out.length != words(state.length))
+			return false;
+		for (int w = 0; w < out.length; w++)
+			out[w] = 0L;
+		for (int i = 0; i < state.length; i++) {
+			if (state[i] == 1.0)
+				out[i >>> 6] |= 1L << i;
+			else if (state[i] != 0.0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Packs the binary state of the given length starting at offset in
+	 * states into the value words of out starting at outOffset.
+	 * 
+	 * @return false if the state is not binary.
+	 */
+	public static boolean packState(double[] states, int offset, int length,
+			long[] out, int outOffset) {
+		int words = words(length);
+		for (int w = 0; w < words; w++)
+			out[outOffset + w] = 0L;
+		for (int i = 0; i < length; i++) {
+			double value = states[offset + i];
+			if (value == 1.0)
+				out[outOffset + (i >>> 6)] |= 1L << i;
+			else if (value != 0.0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns if the packed condition stored at offset in rows matches the
+	 * packed state stored at stateOffset in states.
+	 */
+	public static boolean matches(long[] rows, int offset, long[] states,
+			int stateOffset, int words) {
+		for (int w = 0; w < words; w++)
+			if (((states[stateOffset + w] ^ rows[offset + words + w]) & rows[offset + w]) != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns if the packed condition matches the packed state.
+	 */
+	public static boolean matches(long[] cond, long[] state) {
+		int words = state.length;
+		for (int w = 0; w < words; w++)
+			if (((state[w] ^ cond[words + w]) & cond[w]) != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns if the packed condition stored at offset in rows matches the
+	 * packed state.
+	 */
+	public static boolean matches(long[] rows, int offset, long[] state) {
+		int words = state.length;
+		for (int w = 0; w < words; w++)
+			if (((state[w] ^ rows[offset + words + w]) & rows[offset + w]) != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns if at least one state is matched by both conditions.
+	 */
+	public static boolean overlaps(long[] cond1, long[] cond2) {
+		int words = cond1.length / 2;
+		for (int w = 0; w < words; w++)
+			if (((cond1[words + w] ^ cond2[words + w]) & cond1[w] & cond2[w]) != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns if every state matched by specific is matched by general.
+	 */
+	public static boolean contains(long[] general, long[] specific) {
+		int words = general.length / 2;
+		for (int w = 0; w < words; w++) {
+			if ((general[w] & ~specific[w]) != 0)
+				return false;
+			if (((general[words + w] ^ specific[words + w]) & general[w]) != 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the most specific condition matching all states matched by
+	 * either of the two conditions.
+	 */
+	public static long[] combine(long[] cond1, long[] cond2) {
+		int words = cond1.length / 2;
+		long[] cond = new long[2 * words];
+		for (int w = 0; w < words; w++) {
+			long care = cond1[w] & cond2[w] & ~(cond1[words + w] ^ cond2[words + w]);
+			cond[w] = care;
+			cond[words + w] = cond1[words + w] & care;
+		}
+		return cond;
+	}
+
+	/**
+	 * Unpacks a condition into interval pairs.
+	 * 
+	 * @param cond
+	 *            The packed condition.
+	 * @param attributes
+	 *            The number of attributes of the condition.
+	 */
+	public static double[] unpack(long[] cond, int attributes) {
+		int words = cond.length / 2;
+		double[] elements = new double[2 * attributes];
+		for (int i = 0; i < attributes; i++) {
+			long bit = 1L << i;
+			if ((cond[i >>> 6] & bit) == 0) {
+				elements[2*i] = 0.0;
+				elements[2*i+1] = 1.0;
+			} else {
+				double value = ((cond[words + (i >>> 6)] & bit) != 0) ? 1.0 : 0.0;
+				elements[2*i] = value;
+				elements[2*i+1] = value;
+			}
+		}
+		return elements;
+	}
+}
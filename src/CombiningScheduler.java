@@ -0,0 +1,175 @@
+import java.io.Serializable;
+
+/**
+ * This class spreads rule combining over the learning steps. Instead of
+ * combining all niches at once every Tcomb cycles, each call of step() does
+ * at most a given budget of combining work, measured in candidate pairs or
+ * in time, and the next call continues where the last one stopped. The
+ * changes of each slice are applied to the population right away.
+ *
+ * In adaptive mode the number of cycles between combining rounds is not
+ * fixed but derived from how fast the population changes: a round starts
+ * once about combTarget changes are expected to have accumulated.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ * @see XClassifierSet#combineSlice
+ */
+public class CombiningScheduler implements Serializable {
+	/**
+	 * The number of actions, each having its own niche.
+	 */
+	private int numberOfActions;
+
+	/**
+	 * The budget per step in candidate pairs and in nanoseconds, 0 for no
+	 * limit.
+	 */
+	private int pairBudget = 0;
+	private long timeBudget = 0;
+
+	/**
+	 * Whether the period is derived from the rate of change.
+	 */
+	private boolean adaptive = false;
+
+	/**
+	 * The number of cycles between combining rounds, the period set by the
+	 * user and the bounds of the adaptive period.
+	 */
+	private int period, basePeriod, minPeriod, maxPeriod;
+
+	/**
+	 * The cycles since the last round finished.
+	 */
+	private int cycles = 0;
+
+	/**
+	 * The population of the running round, null if no round is running.
+	 */
+	private XClassifierSet pop = null;
+
+	/**
+	 * The action whose niche is combined and its combining set.
+	 */
+	private int nextAction;
+	private XClassifierSet niche;
+
+	/**
+	 * The change count of the population when the last round finished.
+	 */
+	private long lastChangeCount = 0;
+
+	/**
+	 * Creates a scheduler.
+	 *
+	 * @param numberOfActions
+	 *            The number of actions.
+	 * @param period
+	 *            The number of cycles between combining rounds (Tcomb).
+	 */
+	public CombiningScheduler(int numberOfActions, int period) {
+		this.numberOfActions = numberOfActions;
+		this.basePeriod = Math.max(1, period);
+		this.period = basePeriod;
+		this.minPeriod = Math.max(1, basePeriod / XCSConstants.combPeriodRange);
+		this.maxPeriod = basePeriod * XCSConstants.combPeriodRange;
+	}
+
+	/**
+	 * Sets the budget of each step.
+	 *
+	 * @param pairs
+	 *            The number of candidate pairs, 0 for no limit.
+	 * @param nanos
+	 *            The time in nanoseconds, 0 for no limit.
+	 */
+	public void setBudget(int pairs, long nanos) {
+		this.pairBudget = pairs;
+		this.timeBudget = nanos;
+	}
+
+	/**
+	 * Sets whether the period is derived from the rate of change of the
+	 * population.
+	 */
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+		if (!adaptive)
+			period = basePeriod;
+	}
+
+	/**
+	 * Returns the current number of cycles between combining rounds.
+	 */
+	public int getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Returns if a combining round is running.
+	 */
+	public boolean isCombining() {
+		return pop != null;
+	}
+
+	/**
+	 * Does the combining work of one learning step: starts a round if one is
+	 * due and the population has changed, and continues the running round
+	 * within the budget. A round is dropped if the population was replaced.
+	 *
+	 * @param population
+	 *            The population.
+	 */
+	public void step(XClassifierSet population) {
+		cycles++;
+		if (pop != population) {
+			pop = null;
+			niche = null;
+			if (cycles < period || !population.changed)
+				return;
+			pop = population;
+			pop.changed = false;
+			nextAction = 0;
+		}
+
+		long deadline = (timeBudget > 0) ? System.nanoTime() + timeBudget : 0;
+		int pairs = 0;
+		while (nextAction < numberOfActions) {
+			if (niche == null) {
+				niche = pop.recruitNiche(nextAction);
+				if (niche == null) {
+					nextAction++;
+					continue;
+				}
+			}
+			if ((pairBudget > 0 && pairs >= pairBudget)
+					|| (deadline != 0 && System.nanoTime() - deadline > 0))
+				return;
+			pairs += niche.combineSlice(nextAction,
+					(pairBudget > 0) ? pairBudget - pairs : 0, deadline);
+			niche.applyChanges(nextAction);
+			if (!niche.isCombined())
+				return;
+			niche = null;
+			nextAction++;
+		}
+		finishRound();
+	}
+
+	/**
+	 * Ends the running round and, in adaptive mode, derives the next period
+	 * from the changes per cycle since the last round.
+	 */
+	private void finishRound() {
+		long changes = pop.getChangeCount() - lastChangeCount;
+		lastChangeCount = pop.getChangeCount();
+		if (adaptive) {
+			double rate = changes / (double) cycles;
+			int next = (rate > 0) ? (int) Math.ceil(XCSConstants.combTarget / rate) : maxPeriod;
+			period = Math.max(minPeriod, Math.min(maxPeriod, next));
+		}
+		cycles = 0;
+		pop = null;
+	}
+}
@@ -0,0 +1,398 @@
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * This class is a frozen copy of a population made for exploitation only. The
+ * input space is split into regions by a decision tree over the condition
+ * bounds of the classifiers. Every leaf holds the fitness weighted prediction
+ * sums of the classifiers covering its whole region, so a query walks down
+ * the tree and only tests the few classifiers that cover a leaf partly.
+ *
+ * A split at threshold t sends values below t to one side and the rest to
+ * the other. The interval [l, u] of a classifier therefore yields the
+ * thresholds l and Math.nextUp(u), and every region is half-open.
+ *
+ * The returned action equals the one of PredictionArray.luckyBestActionWinner()
+ * except for ties, which go to the lowest action. Classifiers whose condition
+ * length differs from the first classifier are left out.
+ *
+ * Once constructed a compiled population is never changed, so any number of
+ * threads may query it at the same time.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ * @see XCSManager#compile()
+ */
+public class CompiledPopulation implements Serializable {
+	/**
+	 * Marks prediction array entries without a matching classifier.
+	 */
+	private static final double NONE = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * The number of possible actions and the length of the states.
+	 */
+	private int numberOfActions;
+	private int stateLength;
+
+	/**
+	 * The compiled classifiers: the condition bounds of classifier c starting
+	 * at 2*stateLength*c, its action, its prediction times fitness and its
+	 * fitness.
+	 */
+	private double[] bounds;
+	private int[] actions;
+	private double[] weighted;
+	private double[] fitness;
+
+	/**
+	 * The inner nodes of the tree: the dimension and threshold of the split
+	 * and the child for values below and not below the threshold. A child c
+	 * below zero is the leaf -c-1. The root is the first node, or the leaf
+	 * given by root if the tree has no inner node.
+	 */
+	private int[] splitDim;
+	private double[] threshold;
+	private int[] below;
+	private int[] above;
+	private int nodes = 0;
+	private int root;
+
+	/**
+	 * The leaves: the prediction and fitness sums of the covering classifiers
+	 * at leaf*numberOfActions+action, the best action if no classifier covers
+	 * the leaf partly, and the partly covering classifiers of leaf l in
+	 * partials from partialStart[l] to partialStart[l+1].
+	 */
+	private double[] leafPrediction;
+	private double[] leafFitness;
+	private int[] leafBest;
+	private int[] partialStart;
+	private int[] partials;
+	private int leaves = 0;
+	private int partialCount = 0;
+
+	/**
+	 * The number of leaves after which no region is split any more.
+	 */
+	private int maxLeaves;
+
+	/**
+	 * Compiles the given population. The classifiers are copied, so the
+	 * population may change afterwards.
+	 *
+	 * @param pop
+	 *            The population.
+	 * @param numberOfActions
+	 *            The number of actions possible in the environment.
+	 */
+	public CompiledPopulation(XClassifierSet pop, int numberOfActions) {
+		this.numberOfActions = numberOfActions;
+		int size = pop.getSize();
+		stateLength = (size > 0) ? pop.elementAt(0).getElements().length / 2 : 0;
+
+		int rowLength = 2 * stateLength;
+		bounds = new double[size * rowLength];
+		actions = new int[size];
+		weighted = new double[size];
+		fitness = new double[size];
+		int[] all = new int[size];
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			XClassifier cl = pop.elementAt(i);
+			double[] elements = cl.getElements();
+			if (elements.length != rowLength || cl.getAction() < 0
+					|| cl.getAction() >= numberOfActions)
+				continue;
+			System.arraycopy(elements, 0, bounds, count * rowLength, rowLength);
+			actions[count] = cl.getAction();
+			fitness[count] = cl.getFitness();
+			weighted[count] = cl.getPrediction() * cl.getFitness();
+			all[count] = count;
+			count++;
+		}
+
+		splitDim = new int[16];
+		threshold = new double[16];
+		below = new int[16];
+		above = new int[16];
+		leafPrediction = new double[16 * numberOfActions];
+		leafFitness = new double[16 * numberOfActions];
+		leafBest = new int[16];
+		partialStart = new int[17];
+		partials = new int[16];
+
+		maxLeaves = Math.max(1, count * XCSConstants.compileLeaves);
+		double[] lo = new double[stateLength];
+		double[] hi = new double[stateLength];
+		for (int d = 0; d < stateLength; d++) {
+			lo[d] = Double.NEGATIVE_INFINITY;
+			hi[d] = Double.POSITIVE_INFINITY;
+		}
+		root = build(all, count, new double[numberOfActions], new double[numberOfActions],
+				lo, hi, 0);
+
+		splitDim = Arrays.copyOf(splitDim, nodes);
+		threshold = Arrays.copyOf(threshold, nodes);
+		below = Arrays.copyOf(below, nodes);
+		above = Arrays.copyOf(above, nodes);
+		leafPrediction = Arrays.copyOf(leafPrediction, leaves * numberOfActions);
+		leafFitness = Arrays.copyOf(leafFitness, leaves * numberOfActions);
+		leafBest = Arrays.copyOf(leafBest, leaves);
+		partialStart = Arrays.copyOf(partialStart, leaves + 1);
+		partials = Arrays.copyOf(partials, partialCount);
+	}
+
+	/**
+	 * Builds the subtree of the region [lo, hi).
+	 *
+	 * @param candidates
+	 *            The classifiers possibly overlapping the region which do not
+	 *            cover the region of the parent.
+	 * @param count
+	 *            The number of candidates.
+	 * @param predictionSums
+	 *            The prediction sums of the classifiers covering the parent.
+	 * @param fitnessSums
+	 *            The fitness sums of the classifiers covering the parent.
+	 * @return the node or the encoded leaf.
+	 */
+	private int build(int[] candidates, int count, double[] predictionSums,
+			double[] fitnessSums, double[] lo, double[] hi, int depth) {
+		double[] prediction = predictionSums.clone();
+		double[] fit = fitnessSums.clone();
+		int[] partial = new int[count];
+		int partialSize = 0;
+		for (int i = 0; i < count; i++) {
+			int c = candidates[i];
+			if (!overlaps(c, lo, hi))
+				continue;
+			if (covers(c, lo, hi)) {
+				prediction[actions[c]] += weighted[c];
+				fit[actions[c]] += fitness[c];
+			} else
+				partial[partialSize++] = c;
+		}
+
+		if (partialSize <= XCSConstants.compileLeafSize || depth >= XCSConstants.compileDepth
+				|| leaves >= maxLeaves)
+			return addLeaf(prediction, fit, partial, partialSize);
+
+		// split at the median threshold of the dimension separating best
+		int bestDim = -1;
+		double bestThreshold = 0;
+		int bestCost = Integer.MAX_VALUE;
+		double[] values = new double[2 * partialSize];
+		for (int d = 0; d < stateLength; d++) {
+			int n = 0;
+			for (int i = 0; i < partialSize; i++) {
+				int c = partial[i];
+				double l = lower(c, d);
+				double u = Math.nextUp(upper(c, d));
+				if (l > lo[d] && l < hi[d])
+					values[n++] = l;
+				if (u > lo[d] && u < hi[d])
+					values[n++] = u;
+			}
+			if (n == 0)
+				continue;
+			Arrays.sort(values, 0, n);
+			double t = values[n / 2];
+			int left = 0, right = 0;
+			for (int i = 0; i < partialSize; i++) {
+				int c = partial[i];
+				if (lower(c, d) < t)
+					left++;
+				if (Math.nextUp(upper(c, d)) > t)
+					right++;
+			}
+			int cost = Math.max(left, right);
+			if (cost < bestCost) {
+				bestCost = cost;
+				bestDim = d;
+				bestThreshold = t;
+			}
+		}
+		// a split leaving all partial classifiers on both sides only costs
+		if (bestCost >= partialSize)
+			return addLeaf(prediction, fit, partial, partialSize);
+
+		int node = nodes++;
+		if (node == splitDim.length) {
+			splitDim = Arrays.copyOf(splitDim, 2 * node);
+			threshold = Arrays.copyOf(threshold, 2 * node);
+			below = Arrays.copyOf(below, 2 * node);
+			above = Arrays.copyOf(above, 2 * node);
+		}
+		splitDim[node] = bestDim;
+		threshold[node] = bestThreshold;
+
+		// the arrays may grow while building the children
+		double bound = hi[bestDim];
+		hi[bestDim] = bestThreshold;
+		int child = build(partial, partialSize, prediction, fit, lo, hi, depth + 1);
+		below[node] = child;
+		hi[bestDim] = bound;
+		bound = lo[bestDim];
+		lo[bestDim] = bestThreshold;
+		child = build(partial, partialSize, prediction, fit, lo, hi, depth + 1);
+		above[node] = child;
+		lo[bestDim] = bound;
+		return node;
+	}
+
+	/**
+	 * Stores a leaf and returns its encoded index.
+	 */
+	private int addLeaf(double[] prediction, double[] fit, int[] partial, int partialSize) {
+		int leaf = leaves++;
+		if (leaf == leafBest.length) {
+			leafPrediction = Arrays.copyOf(leafPrediction, 2 * leaf * numberOfActions);
+			leafFitness = Arrays.copyOf(leafFitness, 2 * leaf * numberOfActions);
+			leafBest = Arrays.copyOf(leafBest, 2 * leaf);
+			partialStart = Arrays.copyOf(partialStart, 2 * leaf + 1);
+		}
+		System.arraycopy(prediction, 0, leafPrediction, leaf * numberOfActions, numberOfActions);
+		System.arraycopy(fit, 0, leafFitness, leaf * numberOfActions, numberOfActions);
+		if (partialCount + partialSize > partials.length)
+			partials = Arrays.copyOf(partials,
+					Math.max(2 * partials.length, partialCount + partialSize));
+		System.arraycopy(partial, 0, partials, partialCount, partialSize);
+		partialCount += partialSize;
+		partialStart[leaf + 1] = partialCount;
+
+		int best = -1;
+		if (partialSize == 0)
+			for (int a = 0; a < numberOfActions; a++)
+				if (fit[a] != 0 && (best < 0
+						|| prediction[best] / fit[best] < prediction[a] / fit[a]))
+					best = a;
+		leafBest[leaf] = best;
+		return -leaf - 1;
+	}
+
+	private double lower(int c, int d) {
+		return bounds[2 * (c * stateLength + d)];
+	}
+
+	private double upper(int c, int d) {
+		return bounds[2 * (c * stateLength + d) + 1];
+	}
+
+	/**
+	 * Returns if the classifier matches at least one state of [lo, hi).
+	 */
+	private boolean overlaps(int c, double[] lo, double[] hi) {
+		for (int d = 0; d < stateLength; d++)
+			if (lower(c, d) >= hi[d] || upper(c, d) < lo[d])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns if the classifier matches all states of [lo, hi).
+	 */
+	private boolean covers(int c, double[] lo, double[] hi) {
+		for (int d = 0; d < stateLength; d++)
+			if (lower(c, d) > lo[d] || Math.nextUp(upper(c, d)) < hi[d])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns if the classifier matches the state.
+	 * 
+	 * @see XClassifier#match(double[])
+	 */
+	private boolean matches(int c, double[] state) {
+		for (int d = 0, base = 2 * stateLength * c; d < stateLength; d++) {
+			double value = state[d];
+			if (value < bounds[base + 2*d] || value > bounds[base + 2*d + 1])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the leaf whose region contains the state.
+	 */
+	private int findLeaf(double[] state) {
+		int node = root;
+		while (node >= 0)
+			node = (state[splitDim[node]] < threshold[node]) ? below[node] : above[node];
+		return -node - 1;
+	}
+
+	/**
+	 * Returns the action with the highest prediction for the state, or -1 if
+	 * no classifier matches it.
+	 */
+	public int getAction(double[] state) {
+		if (state.length != stateLength)
+			return -1;
+		int leaf = findLeaf(state);
+		if (partialStart[leaf] == partialStart[leaf + 1])
+			return leafBest[leaf];
+
+		int best = -1;
+		double bestValue = 0;
+		for (int a = 0; a < numberOfActions; a++) {
+			double value = value(leaf, a, state);
+			if (value == NONE)
+				continue;
+			if (best < 0 || bestValue < value) {
+				best = a;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Copies the prediction array of the state into out. Entries of actions
+	 * without a matching classifier are -1.
+	 */
+	public void getPredictionArray(double[] state, double[] out) {
+		if (state.length != stateLength) {
+			for (int a = 0; a < numberOfActions; a++)
+				out[a] = -1;
+			return;
+		}
+		int leaf = findLeaf(state);
+		for (int a = 0; a < numberOfActions; a++) {
+			double value = value(leaf, a, state);
+			out[a] = (value == NONE) ? -1 : value;
+		}
+	}
+
+	/**
+	 * Returns the prediction array entry of the action for a state in the
+	 * given leaf, or NONE if no classifier of the action matches.
+	 */
+	private double value(int leaf, int action, double[] state) {
+		double prediction = leafPrediction[leaf * numberOfActions + action];
+		double fit = leafFitness[leaf * numberOfActions + action];
+		for (int k = partialStart[leaf]; k < partialStart[leaf + 1]; k++) {
+			int c = partials[k];
+			if (actions[c] == action && matches(c, state)) {
+				prediction += weighted[c];
+				fit += fitness[c];
+			}
+		}
+		return (fit != 0) ? prediction / fit : NONE;
+	}
+
+	/**
+	 * Returns the number of inner nodes of the decision tree.
+	 */
+	public int getNodeCount() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the number of leaves of the decision tree.
+	 */
+	public int getLeafCount() {
+		return leaves;
+	}
+}
@@ -0,0 +1,112 @@
+import java.io.Serializable;
+
+/**
+ * This class keeps the deletion votes of the population in a sum tree
+ * (Fenwick tree) indexed by the position of the classifiers, so that a
+ * classifier can be drawn by roulette wheel selection and a vote can be
+ * changed in logarithmic time.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ * @see XClassifier#getDelProp(double)
+ */
+public class DeletionTree implements Serializable {
+	/**
+	 * The partial sums, tree[k] covers the votes of positions k-lowbit(k)
+	 * to k-1.
+	 */
+	private double[] tree;
+
+	/**
+	 * The current vote of every position.
+	 */
+	private double[] votes;
+
+	/**
+	 * The largest power of two not exceeding the capacity.
+	 */
+	private int topStep;
+
+	/**
+	 * The number of votes changed since the partial sums were last computed
+	 * from the votes. After as many changes as there are positions, they are
+	 * computed again so rounding errors of the updates cannot accumulate.
+	 */
+	private int changes = 0;
+
+	/**
+	 * Creates a tree for the given number of positions with all votes zero.
+	 */
+	public DeletionTree(int capacity) {
+		tree = new double[capacity + 1];
+		votes = new double[capacity];
+		topStep = Integer.highestOneBit(Math.max(1, capacity));
+	}
+
+	/**
+	 * Sets the vote of the given position.
+	 */
+	public void set(int pos, double vote) {
+		double change = vote - votes[pos];
+		if (change == 0.)
+			return;
+		votes[pos] = vote;
+		if (++changes >= votes.length) {
+			rebuild(votes, votes.length);
+			return;
+		}
+		for (int k = pos + 1; k < tree.length; k += k & -k)
+			tree[k] += change;
+	}
+
+	/**
+	 * Returns the vote of the given position.
+	 */
+	public double get(int pos) {
+		return votes[pos];
+	}
+
+	/**
+	 * Replaces all votes at once. Positions from size on are set to zero.
+	 */
+	public void rebuild(double[] newVotes, int size) {
+		changes = 0;
+		for (int i = 0; i < votes.length; i++) {
+			votes[i] = (i < size) ? newVotes[i] : 0.;
+			tree[i + 1] = votes[i];
+		}
+		tree[0] = 0.;
+		for (int k = 1; k < tree.length; k++) {
+			int parent = k + (k & -k);
+			if (parent < tree.length)
+				tree[parent] += tree[k];
+		}
+	}
+
+	/**
+	 * Returns the sum of all votes.
+	 */
+	public double total() {
+		double sum = 0.;
+		for (int k = tree.length - 1; k > 0; k -= k & -k)
+			sum += tree[k];
+		return sum;
+	}
+
+	/**
+	 * Returns the first position at which the running sum of the votes
+	 * exceeds the given point, or the capacity if the point is not below the
+	 * total.
+	 */
+	public int find(double point) {
+		int pos = 0;
+		for (int step = topStep; step > 0; step >>= 1) {
+			int next = pos + step;
+			if (next < tree.length && tree[next] <= point) {
+				pos = next;
+				point -= tree[next];
+			}
+		}
+		return pos;
+	}
+}
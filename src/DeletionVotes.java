@@ -0,0 +1,259 @@
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * This class keeps the deletion votes of the population exact for the
+ * current mean fitness without recomputing them when the mean changes. The
+ * vote of getDelProp() is either a part independent of the mean fitness
+ * (actionSetSize * numerosity) or a part proportional to it, depending on
+ * whether fitness / numerosity reaches delta times the mean fitness. The
+ * first parts are summed in one tree and the factors of the second in
+ * another, so the total vote is fixed + mean * scaled and a classifier is
+ * drawn from the tree the wheel lands in.
+ *
+ * Experienced classifiers switch between the two parts when the mean fitness
+ * crosses fitness / numerosity / delta. Those voting the fixed part are kept
+ * in a heap by lowest ratio, those voting the scaled part in a heap by
+ * highest ratio, so before a draw only the classifiers whose part changed
+ * are moved, each in logarithmic time.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ * @see XClassifier#getDelProp(double)
+ * @see DeletionTree
+ */
+public class DeletionVotes implements Serializable {
+	/**
+	 * The part a position votes with: the fixed part without being able to
+	 * switch (too inexperienced or empty), the fixed part or the scaled part.
+	 */
+	private static final byte STABLE = 0, FIXED = 1, SCALED = 2;
+
+	/**
+	 * The sums of the fixed parts and of the factors of the scaled parts.
+	 */
+	private DeletionTree fixedVotes, scaledVotes;
+
+	/**
+	 * Per position: fitness / numerosity, the fixed part, the factor of the
+	 * scaled part, the part voted with and the position in its heap (-1 if
+	 * none).
+	 */
+	private double[] ratio, fixedPart, scaledPart;
+	private byte[] part;
+	private int[] heapPos;
+
+	/**
+	 * The positions voting the fixed part and able to switch, a heap by
+	 * lowest ratio, and those voting the scaled part, a heap by highest ratio.
+	 */
+	private int[] fixedHeap, scaledHeap;
+	private int fixedHeapSize = 0, scaledHeapSize = 0;
+
+	/**
+	 * Creates the votes for the given number of positions, all zero.
+	 */
+	public DeletionVotes(int capacity) {
+		fixedVotes = new DeletionTree(capacity);
+		scaledVotes = new DeletionTree(capacity);
+		ratio = new double[capacity];
+		fixedPart = new double[capacity];
+		scaledPart = new double[capacity];
+		part = new byte[capacity];
+		heapPos = new int[capacity];
+		java.util.Arrays.fill(heapPos, -1);
+		fixedHeap = new int[capacity];
+		scaledHeap = new int[capacity];
+	}
+
+	/**
+	 * Sets the vote of the given position from the parameters of its
+	 * classifier. The part is chosen for the given mean fitness and adjusted
+	 * to the mean of the next draw by draw().
+	 */
+	public void set(int pos, double actionSetSize, int numerosity, double fitness, int experience,
+			double meanFitness) {
+		unlink(pos);
+		if (numerosity <= 0) {
+			fixedVotes.set(pos, 0.);
+			scaledVotes.set(pos, 0.);
+			return;
+		}
+		double fixed = actionSetSize * numerosity;
+		double r = fitness / numerosity;
+		ratio[pos] = r;
+		fixedPart[pos] = fixed;
+		scaledPart[pos] = fixed / r;
+		if (experience < XCSConstants.theta_del)
+			vote(pos, STABLE);
+		else if (!(r < XCSConstants.delta * meanFitness))
+			vote(pos, FIXED);
+		else
+			vote(pos, SCALED);
+	}
+
+	/**
+	 * Sets the vote of the given position to zero.
+	 */
+	public void clear(int pos) {
+		unlink(pos);
+		fixedVotes.set(pos, 0.);
+		scaledVotes.set(pos, 0.);
+	}
+
+	/**
+	 * Moves the vote of one position to another one, whose vote has to be
+	 * zero, and clears the first.
+	 */
+	public void move(int from, int to) {
+		ratio[to] = ratio[from];
+		fixedPart[to] = fixedPart[from];
+		scaledPart[to] = scaledPart[from];
+		part[to] = part[from];
+		part[from] = STABLE;
+		int h = heapPos[from];
+		heapPos[to] = h;
+		heapPos[from] = -1;
+		if (h >= 0)
+			((part[to] == FIXED) ? fixedHeap : scaledHeap)[h] = to;
+		fixedVotes.set(to, fixedVotes.get(from));
+		scaledVotes.set(to, scaledVotes.get(from));
+		fixedVotes.set(from, 0.);
+		scaledVotes.set(from, 0.);
+	}
+
+	/**
+	 * Sets all votes to zero.
+	 */
+	public void reset() {
+		for (int pos = 0; pos < part.length; pos++)
+			clear(pos);
+	}
+
+	/**
+	 * Draws a position by roulette wheel selection over the votes for the
+	 * given mean fitness. A draw beyond size, which rounding can cause, is
+	 * repeated. If no position has a vote, one is chosen uniformly.
+	 */
+	public int draw(double meanFitness, int size, Random random) {
+		switchParts(meanFitness);
+		double fixedTotal = fixedVotes.total();
+		double total = fixedTotal + meanFitness * scaledVotes.total();
+		int pos = size;
+		if (total > 0.)
+			for (int tries = 0; pos >= size && tries < 64; tries++) {
+				double point = total * random.nextDouble();
+				pos = (point < fixedTotal) ? fixedVotes.find(point)
+						: scaledVotes.find((point - fixedTotal) / meanFitness);
+			}
+		return (pos < size) ? pos : random.nextInt(size);
+	}
+
+	/**
+	 * Moves the classifiers whose ratio the mean fitness crossed to the other
+	 * part.
+	 */
+	private void switchParts(double meanFitness) {
+		double limit = XCSConstants.delta * meanFitness;
+		while (fixedHeapSize > 0 && ratio[fixedHeap[0]] < limit) {
+			int pos = fixedHeap[0];
+			unlink(pos);
+			vote(pos, SCALED);
+		}
+		while (scaledHeapSize > 0 && !(ratio[scaledHeap[0]] < limit)) {
+			int pos = scaledHeap[0];
+			unlink(pos);
+			vote(pos, FIXED);
+		}
+	}
+
+	/**
+	 * Lets the position vote with the given part.
+	 */
+	private void vote(int pos, byte newPart) {
+		part[pos] = newPart;
+		fixedVotes.set(pos, (newPart == SCALED) ? 0. : fixedPart[pos]);
+		scaledVotes.set(pos, (newPart == SCALED) ? scaledPart[pos] : 0.);
+		if (newPart == FIXED) {
+			fixedHeap[fixedHeapSize] = pos;
+			heapPos[pos] = fixedHeapSize;
+			siftUp(fixedHeap, fixedHeapSize++, 1);
+		} else if (newPart == SCALED) {
+			scaledHeap[scaledHeapSize] = pos;
+			heapPos[pos] = scaledHeapSize;
+			siftUp(scaledHeap, scaledHeapSize++, -1);
+		}
+	}
+
+	/**
+	 * Takes the position out of its heap.
+	 */
+	private void unlink(int pos) {
+		int h = heapPos[pos];
+		byte oldPart = part[pos];
+		part[pos] = STABLE;
+		if (h < 0)
+			return;
+		heapPos[pos] = -1;
+		int[] heap;
+		int size, sign;
+		if (oldPart == FIXED) {
+			heap = fixedHeap;
+			size = --fixedHeapSize;
+			sign = 1;
+		} else {
+			heap = scaledHeap;
+			size = --scaledHeapSize;
+			sign = -1;
+		}
+		if (h == size)
+			return;
+		int moved = heap[size];
+		heap[h] = moved;
+		heapPos[moved] = h;
+		siftUp(heap, h, sign);
+		if (heapPos[moved] == h)
+			siftDown(heap, h, size, sign);
+	}
+
+	/**
+	 * Moves the entry at h of the heap up; the heap holds the lowest ratio on
+	 * top for sign 1 and the highest for sign -1.
+	 */
+	private void siftUp(int[] heap, int h, int sign) {
+		int pos = heap[h];
+		while (h > 0) {
+			int parent = (h - 1) >>> 1;
+			if (sign * Double.compare(ratio[heap[parent]], ratio[pos]) <= 0)
+				break;
+			heap[h] = heap[parent];
+			heapPos[heap[h]] = h;
+			h = parent;
+		}
+		heap[h] = pos;
+		heapPos[pos] = h;
+	}
+
+	/**
+	 * Moves the entry at h of the heap of the given size down.
+	 */
+	private void siftDown(int[] heap, int h, int size, int sign) {
+		if (h >= size)
+			return;
+		int pos = heap[h];
+		while (true) {
+			int child = 2 * h + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && sign * Double.compare(ratio[heap[child + 1]], ratio[heap[child]]) < 0)
+				child++;
+			if (sign * Double.compare(ratio[heap[child]], ratio[pos]) >= 0)
+				break;
+			heap[h] = heap[child];
+			heapPos[heap[h]] = h;
+			h = child;
+		}
+		heap[h] = pos;
+		heapPos[pos] = h;
+	}
+}
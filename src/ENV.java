@@ -3,7 +3,7 @@ import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.PrintWriter;
 import java.text.DecimalFormat;
-import java.util.Random;
+import java.util.List;
 
 /**
  * This class is the XCS itself. It stores the population and the posed problem.
@@ -19,10 +19,8 @@ public class ENV {
 
 	public static void main(String args[]) {
 		DecimalFormat df = new DecimalFormat("0.000");
-		MazeEnvironment env = null;
 		int maxTrials = 4001;
 		int interval = 50;
-		File out = null;
 		double[] perf = new double[maxTrials / interval + 1];
 		double[] serr = new double[maxTrials / interval + 1];
 		double[] popSize = new double[maxTrials / interval + 1];
@@ -30,9 +28,11 @@ public class ENV {
 		boolean combineMode = true;
 		int Tcomb = (combineMode)? (2*50):0;
 		boolean debugMode = true;
-		Random rSeed = new Random();
 		int totRS = 20;
 
+		// number of simulations running at the same time (0: one per processor)
+		int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 0;
+
 		// The available environments so far: Woods1, Woods2, Maze4, Maze5, and Maze6
 		String enviFileString = "Environments\\Maze4.txt";
 		String outFile = "ENV_" + enviFileString.substring(enviFileString.lastIndexOf('\\') + 1, enviFileString.lastIndexOf('.')) + ".csv";
@@ -58,16 +58,82 @@ public class ENV {
 			popSize[i] = 0.;
 		}
 
-		env = new MazeEnvironment(enviFileString, bit);
+		Experiment experiment = new Experiment();
+		experiment.enviFileString = enviFileString;
+		experiment.bit = bit;
+		experiment.maxPopSize = maxPopSize;
+		experiment.Tcomb = Tcomb;
+		experiment.debugMode = debugMode;
+		experiment.maxTrials = maxTrials;
+		experiment.interval = interval;
+
+		// run the simulations concurrently, each with its own maze and learner
+		List<Result> results = ExperimentRunner.run(1, totRS, threads, experiment);
+
+		for (Result result : results)
+			for (int i = 0; i <= maxTrials / interval; i++) {
+				perf[i] += result.perf[i];
+				serr[i] += result.serr[i];
+				popSize[i] += result.popSize[i];
+			}
+
+		pW.println("Trials;Performance;SysError;PopSize;Prediction");
+		for (int i = 0; i <= maxTrials / interval; i++)
+			pW.println(i * interval + ";" + df.format((float) perf[i] / totRS)
+					+ ";" + df.format((float) serr[i] / totRS) + ";"
+					+ df.format(popSize[i] / totRS));
+
+		try {
+			pW.flush();
+			bW.flush();
+			fW.flush();
+			fW.close();
+		} catch (Exception ex) {
+			System.out.println("Mistake in closing the file writer!" + ex);
+		}
+
+		return;
+	}
 
-		for (int rs = 1; rs <= totRS; rs++) {
+	/**
+	 * The steps to food, system error and population size one simulation
+	 * recorded for each interval.
+	 */
+	private static class Result {
+		double[] perf;
+		double[] serr;
+		double[] popSize;
+	}
+
+	/**
+	 * The settings of an experiment and the simulation of one random seed.
+	 * Each simulation has its own maze and learner; the maze draws its start
+	 * positions from the random source of the learner.
+	 */
+	private static class Experiment implements ExperimentRunner.Simulation<Result> {
+		String enviFileString;
+		int bit;
+		int maxPopSize;
+		int Tcomb;
+		boolean debugMode;
+		int maxTrials;
+		int interval;
+
+		public Result run(int rs, PrintWriter log) {
+			DecimalFormat df = new DecimalFormat("0.000");
+			Result result = new Result();
+			result.perf = new double[maxTrials / interval + 1];
+			result.serr = new double[maxTrials / interval + 1];
+			result.popSize = new double[maxTrials / interval + 1];
+
+			File out = null;
 			if (debugMode) {
 				String filename = "ENV_Debug_";
 				if (rs<10) filename += "0";
 				out = new File(filename + rs + ".csv");				
 			}
-			rSeed.setSeed(rs * 9);
 
+			MazeEnvironment env = new MazeEnvironment(enviFileString, bit);
 			XCSManager xcsLearn = new XCSManager(env, maxPopSize, Tcomb, debugMode, out, rs * 99);
 
 			int explore = 0, exploreStepCounter = 0;
@@ -76,8 +142,8 @@ public class ENV {
 
 			for (int exploreTrialC = 0; exploreTrialC <= maxTrials; exploreTrialC += explore) {
 				if (exploreTrialC == 0) {
-					System.out.println("\n=====\nSIMULATION " + rs);					
-					System.out.println("Trials;Perf;SysErr;PopSize;Prediction");					
+					log.println("\n=====\nSIMULATION " + rs);					
+					log.println("Trials;Perf;SysErr;PopSize;Prediction");					
 				}
 				explore = (explore + 1) % 2;
 
@@ -91,10 +157,10 @@ public class ENV {
 						perfNow += stepsToFood[i];
 						serrNow += sysError[i];
 					}
-					perf[exploreTrialC / interval] += perfNow / interval;
-					serr[exploreTrialC / interval] += serrNow / interval;
-					popSize[exploreTrialC / interval] += xcsLearn.getPopSize();
-					System.out.println(exploreTrialC + ";"
+					result.perf[exploreTrialC / interval] += perfNow / interval;
+					result.serr[exploreTrialC / interval] += serrNow / interval;
+					result.popSize[exploreTrialC / interval] += xcsLearn.getPopSize();
+					log.println(exploreTrialC + ";"
 							+ df.format((float) perfNow / interval) + ";"
 							+ df.format((float) serrNow) + ";"
 							+ (xcsLearn.getPopSize()));
@@ -105,24 +171,8 @@ public class ENV {
 
 			if (debugMode)
 				xcsLearn.writeDebug("Final Pop");
+			return result;
 		}
-
-		pW.println("Trials;Performance;SysError;PopSize;Prediction");
-		for (int i = 0; i <= maxTrials / interval; i++)
-			pW.println(i * interval + ";" + df.format((float) perf[i] / totRS)
-					+ ";" + df.format((float) serr[i] / totRS) + ";"
-					+ df.format(popSize[i] / totRS));
-
-		try {
-			pW.flush();
-			bW.flush();
-			fW.flush();
-			fW.close();
-		} catch (Exception ex) {
-			System.out.println("Mistake in closing the file writer!" + ex);
-		}
-
-		return;
 	}
 
 }
@@ -0,0 +1,99 @@
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class runs the simulations of an experiment, one per random seed,
+ * concurrently on a thread pool. Each simulation has to create its own
+ * learner, environment and random sources, so that its result does not
+ * depend on the other simulations or on the number of threads. What a
+ * simulation prints to its log is buffered and written to System.out in
+ * the order of the seeds once the simulation is done.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ * @see MPX
+ * @see ENV
+ */
+public class ExperimentRunner {
+	/**
+	 * One simulation of an experiment.
+	 */
+	public interface Simulation<T> {
+		/**
+		 * Runs the simulation of the given seed.
+		 * 
+		 * @param seed
+		 *            The random seed of the simulation.
+		 * @param log
+		 *            Receives the output of the simulation.
+		 * @return the result of the simulation.
+		 */
+		T run(int seed, PrintWriter log);
+	}
+
+	/**
+	 * Runs the simulations of the seeds from firstSeed to lastSeed and
+	 * returns their results in the order of the seeds.
+	 * 
+	 * @param firstSeed
+	 *            The first random seed.
+	 * @param lastSeed
+	 *            The last random seed.
+	 * @param threads
+	 *            The number of simulations running at the same time, 0 for
+	 *            the number of available processors.
+	 * @param simulation
+	 *            The simulation to run for each seed.
+	 * @return the results of the simulations.
+	 */
+	public static <T> List<T> run(int firstSeed, int lastSeed, int threads,
+			final Simulation<T> simulation) {
+		if (threads <= 0)
+			threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<T>> runs = new ArrayList<Future<T>>();
+		final List<StringWriter> logs = new ArrayList<StringWriter>();
+
+		for (int seed = firstSeed; seed <= lastSeed; seed++) {
+			final int rs = seed;
+			final StringWriter log = new StringWriter();
+			logs.add(log);
+			runs.add(pool.submit(new Callable<T>() {
+				public T call() {
+					PrintWriter writer = new PrintWriter(log);
+					try {
+						return simulation.run(rs, writer);
+					} finally {
+						writer.flush();
+					}
+				}
+			}));
+		}
+		pool.shutdown();
+
+		List<T> results = new ArrayList<T>();
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				results.add(runs.get(i).get());
+				System.out.print(logs.get(i));
+				System.out.flush();
+			}
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Experiment interrupted", e);
+		} catch (ExecutionException e) {
+			pool.shutdownNow();
+			System.err.println("Error in simulation: " + e.getCause());
+			throw new RuntimeException(e.getCause());
+		}
+		return results;
+	}
+}
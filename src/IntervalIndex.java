@@ -0,0 +1,201 @@
+import java.io.Serializable;
+
+/**
+ * This class indexes the condition intervals of the classifiers in a set so
+ * that the classifiers possibly matching a state can be found without testing
+ * the whole set. Every input dimension is divided into a fixed number of bins
+ * between indexLow and indexHigh, values outside are clamped to the border
+ * bins. A classifier is registered in every bin its interval touches in every
+ * dimension. A query returns the members of the smallest bin hit by the state,
+ * which is a superset of the matching classifiers; the caller still has to
+ * check each candidate.
+ *
+ * Every member remembers its positions in the bins it is registered in, so
+ * it is removed from each bin in constant time by moving the last member of
+ * the bin into its place. The candidates therefore come in no particular
+ * order.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ */
+public class IntervalIndex implements Serializable {
+	/**
+	 * The number of bins per dimension.
+	 */
+	private int bins;
+
+	/**
+	 * The number of dimensions, set by the first classifier added. If
+	 * classifiers of different lengths are added, it is set to -1 and the
+	 * index does not answer queries any more.
+	 */
+	private int dims = 0;
+
+	/**
+	 * The members of each bin, the bin b of dimension d at position d*bins+b.
+	 */
+	private XClassifier[][] cells;
+
+	/**
+	 * For each member of a bin, the entry of the bin in the slots of the
+	 * member, parallel to cells.
+	 * 
+	 * @see XClassifier#indexSlots
+	 */
+	private int[][] cellEntries;
+
+	/**
+	 * The number of members of each bin.
+	 */
+	private int[] cellSize;
+
+	/**
+	 * Creates an empty index.
+	 *
+	 * @param bins
+	 *            The number of bins per input dimension.
+	 */
+	public IntervalIndex(int bins) {
+		this.bins = bins;
+	}
+
+	/**
+	 * Returns the bin of the given value.
+	 */
+	private int bin(double value) {
+		return bin(value, bins);
+	}
+
+	/**
+	 * Returns the bin of the given value if the range between indexLow and
+	 * indexHigh is divided into the given number of bins.
+	 */
+	static int bin(double value, int bins) {
+		double low = XCSConstants.indexLow;
+		double high = XCSConstants.indexHigh;
+		if (value <= low)
+			return 0;
+		if (value >= high)
+			return bins - 1;
+		int b = (int) ((value - low) / (high - low) * bins);
+		return (b < bins) ? b : bins - 1;
+	}
+
+	/**
+	 * Registers the classifier in all bins its condition touches.
+	 */
+	public void add(XClassifier cl) {
+		double[] elements = cl.getElements();
+		if (dims == 0) {
+			dims = elements.length / 2;
+			cells = new XClassifier[dims * bins][];
+			cellEntries = new int[dims * bins][];
+			cellSize = new int[dims * bins];
+		} else if (dims != elements.length / 2) {
+			dims = -1;
+			cells = null;
+			cellEntries = null;
+			cellSize = null;
+		}
+		if (dims < 0)
+			return;
+
+		int touched = 0;
+		for (int d = 0; d < dims; d++)
+			touched += bin(elements[2*d+1]) - bin(elements[2*d]) + 1;
+		int[] slots = new int[touched];
+		int entry = 0;
+		for (int d = 0; d < dims; d++) {
+			int last = d * bins + bin(elements[2*d+1]);
+			for (int c = d * bins + bin(elements[2*d]); c <= last; c++) {
+				if (cells[c] == null) {
+					cells[c] = new XClassifier[8];
+					cellEntries[c] = new int[8];
+				} else if (cellSize[c] == cells[c].length) {
+					XClassifier[] grown = new XClassifier[2 * cellSize[c]];
+					System.arraycopy(cells[c], 0, grown, 0, cellSize[c]);
+					cells[c] = grown;
+					int[] grownEntries = new int[2 * cellSize[c]];
+					System.arraycopy(cellEntries[c], 0, grownEntries, 0, cellSize[c]);
+					cellEntries[c] = grownEntries;
+				}
+				int slot = cellSize[c]++;
+				cells[c][slot] = cl;
+				cellEntries[c][slot] = entry;
+				slots[entry++] = slot;
+			}
+		}
+		cl.indexSlots = slots;
+	}
+
+	/**
+	 * Removes the classifier from all bins its condition touches, moving the
+	 * last member of each bin into its place.
+	 */
+	public void remove(XClassifier cl) {
+		int[] slots = cl.indexSlots;
+		cl.indexSlots = null;
+		if (dims <= 0 || slots == null)
+			return;
+		double[] elements = cl.getElements();
+		if (dims != elements.length / 2)
+			return;
+
+		int entry = 0;
+		for (int d = 0; d < dims; d++) {
+			int last = d * bins + bin(elements[2*d+1]);
+			for (int c = d * bins + bin(elements[2*d]); c <= last; c++) {
+				XClassifier[] cell = cells[c];
+				int slot = slots[entry++];
+				int end = --cellSize[c];
+				if (slot != end) {
+					XClassifier moved = cell[end];
+					int movedEntry = cellEntries[c][end];
+					cell[slot] = moved;
+					cellEntries[c][slot] = movedEntry;
+					moved.indexSlots[movedEntry] = slot;
+				}
+				cell[end] = null;
+			}
+		}
+	}
+
+	/**
+	 * Removes all classifiers from the index.
+	 */
+	public void clear() {
+		dims = 0;
+		cells = null;
+		cellEntries = null;
+		cellSize = null;
+	}
+
+	/**
+	 * Copies the candidates for matching the given state into out.
+	 *
+	 * @param state
+	 *            The current situation.
+	 * @param out
+	 *            Receives the candidates, must be at least as large as the
+	 *            indexed set.
+	 * @return the number of candidates, or -1 if the index cannot answer the
+	 *         query and the whole set has to be tested.
+	 */
+	public int query(double[] state, XClassifier[] out) {
+		if (dims <= 0 || dims != state.length)
+			return -1;
+
+		int best = -1;
+		for (int d = 0; d < dims; d++) {
+			int c = d * bins + bin(state[d]);
+			if (best < 0 || cellSize[c] < cellSize[best]) {
+				best = c;
+				if (cellSize[c] == 0)
+					break;
+			}
+		}
+		if (cellSize[best] > 0)
+			System.arraycopy(cells[best], 0, out, 0, cellSize[best]);
+		return cellSize[best];
+	}
+}
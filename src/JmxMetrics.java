@@ -0,0 +1,177 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.ObjectName;
+
+/**
+ * This class collects the metrics of a learner and exposes them as an MXBean.
+ * Latencies are kept in histograms with power-of-two buckets, so recording
+ * costs a few atomic increments and no allocation.
+ *
+ * Usage: config.metrics = new JmxMetrics(); then register(name) to make it
+ * visible in JConsole or any other JMX client.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ */
+public class JmxMetrics implements XCSMetrics, JmxMetricsMXBean {
+	/**
+	 * The number of histogram buckets per phase, one for each bit length of
+	 * a latency.
+	 */
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray events = new AtomicLongArray(EVENTS.length);
+	private final AtomicLongArray phaseCounts = new AtomicLongArray(PHASES.length);
+	private final AtomicLongArray phaseNanos = new AtomicLongArray(PHASES.length);
+
+	/**
+	 * The histograms, bucket b of phase p at position p*BUCKETS+b.
+	 */
+	private final AtomicLongArray histograms = new AtomicLongArray(PHASES.length * BUCKETS);
+
+	/**
+	 * Registers the metrics at the platform MBean server under the given
+	 * learner name.
+	 * 
+	 * @return true if it was registered.
+	 */
+	public boolean register(String name) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName(name));
+			return true;
+		} catch (Exception e) {
+			System.err.println("Error registering metrics " + name + ": " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * Removes the metrics of the given learner name from the platform MBean
+	 * server.
+	 */
+	public void unregister(String name) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+		} catch (Exception e) {
+			System.err.println("Error unregistering metrics " + name + ": " + e);
+		}
+	}
+
+	private static ObjectName objectName(String name) throws Exception {
+		return new ObjectName("XCS-RC:type=Learner,name=" + ObjectName.quote(name));
+	}
+
+	public boolean isEnabled() {
+		return true;
+	}
+
+	public void phase(int phase, long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		phaseCounts.incrementAndGet(phase);
+		phaseNanos.addAndGet(phase, nanos);
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+		histograms.incrementAndGet(phase * BUCKETS + bucket);
+	}
+
+	public void count(int event, int n) {
+		events.addAndGet(event, n);
+	}
+
+	public long getCoverings() {
+		return events.get(COVERINGS);
+	}
+
+	public long getDeletions() {
+		return events.get(DELETIONS);
+	}
+
+	public long getRemovals() {
+		return events.get(REMOVALS);
+	}
+
+	public long getCombines() {
+		return events.get(COMBINES);
+	}
+
+	public long getDisprovals() {
+		return events.get(DISPROVALS);
+	}
+
+	public long getOutliers() {
+		return events.get(OUTLIERS);
+	}
+
+	public String[] getPhases() {
+		return PHASES.clone();
+	}
+
+	public long[] getPhaseCounts() {
+		return toArray(phaseCounts, 0, PHASES.length);
+	}
+
+	public long[] getPhaseNanos() {
+		return toArray(phaseNanos, 0, PHASES.length);
+	}
+
+	public double[] getMeanLatencies() {
+		double[] means = new double[PHASES.length];
+		for (int p = 0; p < PHASES.length; p++) {
+			long count = phaseCounts.get(p);
+			means[p] = (count > 0) ? (double) phaseNanos.get(p) / count : 0.;
+		}
+		return means;
+	}
+
+	public long[] getLatencyHistogram(String phase) {
+		int p = indexOf(PHASES, phase);
+		return (p < 0) ? new long[0] : toArray(histograms, p * BUCKETS, BUCKETS);
+	}
+
+	public long getLatencyPercentile(String phase, double percentile) {
+		long[] histogram = getLatencyHistogram(phase);
+		long total = 0;
+		for (long n : histogram)
+			total += n;
+		if (total == 0)
+			return 0;
+		long rank = (long) Math.ceil(Math.max(0., Math.min(100., percentile)) / 100. * total);
+		long seen = 0;
+		for (int b = 0; b < histogram.length; b++) {
+			seen += histogram[b];
+			if (seen >= rank && seen > 0)
+				return (b >= 63) ? Long.MAX_VALUE : 1L << b;
+		}
+		return Long.MAX_VALUE;
+	}
+
+	public long getCount(String event) {
+		int e = indexOf(EVENTS, event);
+		return (e < 0) ? 0 : events.get(e);
+	}
+
+	public void reset() {
+		for (int i = 0; i < events.length(); i++)
+			events.set(i, 0);
+		for (int i = 0; i < PHASES.length; i++) {
+			phaseCounts.set(i, 0);
+			phaseNanos.set(i, 0);
+		}
+		for (int i = 0; i < histograms.length(); i++)
+			histograms.set(i, 0);
+	}
+
+	private static long[] toArray(AtomicLongArray array, int from, int length) {
+		long[] values = new long[length];
+		for (int i = 0; i < length; i++)
+			values[i] = array.get(from + i);
+		return values;
+	}
+
+	private static int indexOf(String[] names, String name) {
+		for (int i = 0; i < names.length; i++)
+			if (names[i].equals(name))
+				return i;
+		return -1;
+	}
+}
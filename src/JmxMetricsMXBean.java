@@ -0,0 +1,62 @@
+/**
+ * The management interface of JmxMetrics. The phases and events are named as
+ * in XCSMetrics.PHASES and XCSMetrics.EVENTS.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ */
+public interface JmxMetricsMXBean {
+	long getCoverings();
+
+	long getDeletions();
+
+	long getRemovals();
+
+	long getCombines();
+
+	long getDisprovals();
+
+	long getOutliers();
+
+	/**
+	 * Returns the names of the phases.
+	 */
+	String[] getPhases();
+
+	/**
+	 * Returns the number of measured runs of each phase.
+	 */
+	long[] getPhaseCounts();
+
+	/**
+	 * Returns the total time spent in each phase in nanoseconds.
+	 */
+	long[] getPhaseNanos();
+
+	/**
+	 * Returns the mean latency of each phase in nanoseconds.
+	 */
+	double[] getMeanLatencies();
+
+	/**
+	 * Returns the latency histogram of the given phase. Bucket b counts the
+	 * runs that took less than 2^b but at least 2^(b-1) nanoseconds.
+	 */
+	long[] getLatencyHistogram(String phase);
+
+	/**
+	 * Returns an upper bound of the given percentile (0 to 100) of the
+	 * latencies of the given phase in nanoseconds, or 0 if it was not run.
+	 */
+	long getLatencyPercentile(String phase, double percentile);
+
+	/**
+	 * Returns the number of events of the given name.
+	 */
+	long getCount(String event);
+
+	/**
+	 * Sets all counters and histograms back to zero.
+	 */
+	void reset();
+}
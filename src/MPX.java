@@ -1,5 +1,6 @@
 import java.io.*;
 import java.text.DecimalFormat;
+import java.util.List;
 import java.util.Random;
 
 public class MPX {
@@ -8,13 +9,10 @@ public class MPX {
 
 	public static void main(String[] args) {
 
-		Random rSeed = new Random();
 		DecimalFormat df = new DecimalFormat("0.000");
 		int numberOfActions = 2;
 		boolean debugMode = true;
 
-		File outputFile = null;
-
 		/*
 		 * File parameters
 		 * 
@@ -22,6 +20,9 @@ public class MPX {
 		 * startRS = starting random seed
 		 * trials = number of learning cycles to be performed
 		 * 
+		 * threads = number of simulations running at the same time (0: one per
+		 * processor)
+		 * 
 		 * inputLength = number of input bits, following address bits
 		 * totalSims = number of simulations
 		 * 
@@ -32,6 +33,7 @@ public class MPX {
 		int startRS = (args.length > 2) ? Integer.parseInt(args[2]):1;
 		int totalSims = (args.length > 2) ? startRS:20;
 		int trials  = (args.length > 3) ? Integer.parseInt(args[3]):0;
+		int threads = (args.length > 4) ? Integer.parseInt(args[4]):0;
 		String name = (args.length > 2) ? "_" + args[2] : "";
 		int expNum  = totalSims - startRS + 1;
 
@@ -63,9 +65,6 @@ public class MPX {
 			e.printStackTrace();
 		}			
 
-		// initialize XCS learning system
-		XCSManager xcsLearn = null;
-
 		// set maximum number of trials
 		//				MP	0 	 1		2	 	3		4
 		int[] maxTrials = { 0, 1000, 10000, 50000, 200000, 100000 };
@@ -94,41 +93,145 @@ public class MPX {
 		// set outlier detection
 		boolean outlierDetection = false;
 
-		// initialize correctness rate for the first interval
-		int intervalCorrect = 0;
-
 		// set sliding window value for recording interval
 		//					MP	0	1	2	 3		4
 		//int[] slidingWindows = { 0, 40, 100, 200, 500, 2000 };
 		int slidingWindow = Tcomb; //slidingWindows[addressBits];
 
+		// index condition intervals for real-valued input
+		int indexBins = (inputMode == 1) ? 16 : 0;
+
 		// set max disproval rate
-		XCSConstants.maxDispRate = (outlierDetection)?XCSConstants.maxDispRate:0;
+		int maxDispRate = 0;
 		
 		// set filtering period (will be multiplied by combining period)
 		// int Tfil = (filterMode) ? 2:0;
 		
 		String title = "Trials";
-		int[][] correctness = new int[totalSims][maxTrial / slidingWindow + 1];
-		int[][] numOfClassf = new int[totalSims][maxTrial / slidingWindow + 1];
-		int[][] deletions = new int[totalSims][maxTrial / slidingWindow + 1];
 
 		if (args.length == 0)
 			title += ";AVE";
-		int n = 20;
 
 		System.out.println("MP"+inputLength+"; N="+maxPopSize[addressBits]+"; Tcomb="+Tcomb);
 		System.out.println("No. Random seed; overall correctness rate; final population size; deletions; time (ms)");
 
-		long[] timeReq = new long[totalSims+1];
-		long start_time = System.nanoTime();
+		Experiment experiment = new Experiment();
+		experiment.numberOfActions = numberOfActions;
+		experiment.addressBits = addressBits;
+		experiment.inputLength = inputLength;
+		experiment.inputMode = inputMode;
+		experiment.maxTrial = maxTrial;
+		experiment.slidingWindow = slidingWindow;
+		experiment.maxPopSize = maxPopSize[addressBits];
+		experiment.Tcomb = Tcomb;
+		experiment.indexBins = indexBins;
+		experiment.maxDispRate = (outlierDetection)?maxDispRate:0;
+		experiment.debugMode = debugMode;
+
+		// run the simulations concurrently, each with its own learner
+		List<Result> results = ExperimentRunner.run(startRS, totalSims, threads, experiment);
+
+		double difference = 0;
+		for (int a = 0; a < expNum; a++) difference += results.get(a).timeReq/1e6;
+		
+		System.out.println("MP"+inputLength+"; N="+maxPopSize[addressBits]+"; Tcomb="+Tcomb);
+		System.out.println("Average time in ms: " + Math.round(difference / expNum));
+
+		for (int a = 0; a < expNum; a++)
+			title += ";RS-" + (a + startRS);
+		try {
+			corr.append(title + "\r\n");
+			for (int b = 0; b <= maxTrial / slidingWindow; b++) {
+				String values = (b * slidingWindow) + ";";
+				double perf = 0;
+				for (int a = 0; a < expNum; a++)
+					perf += results.get(a).correctness[b];
+				if (args.length == 0)
+					values += df.format(perf / (slidingWindow * expNum / 2)) + ";";
+				for (int a = 0; a < expNum; a++)
+					values += df.format((double) results.get(a).correctness[b] / (slidingWindow / 2)) + ";";
+				corr.append(values + "\r\n");
+			}
+			corr.flush();
+		} catch (IOException e) {
+			System.err.println("Error writing to file!");
+		}
+
+		try {
+			classf.append(title + "\r\n");
+			for (int b = 0; b <= maxTrial / slidingWindow; b++) {
+				String values = (b * slidingWindow) + ";";
+				double clas = 0;
+				for (int a = 0; a < expNum; a++)
+					clas += results.get(a).numOfClassf[b];
+				if (args.length == 0)
+					values += df.format(clas / expNum) + ";";
+				for (int a = 0; a < expNum; a++)
+					values += df.format((double) results.get(a).numOfClassf[b]) + ";";
+				classf.append(values + "\r\n");
+			}
+			classf.flush();
+		} catch (IOException e) {
+			System.err.println("Error writing to file!");
+		}
+
+		try {
+			dele.append(title + "\r\n");
+			for (int b = 0; b <= maxTrial / slidingWindow; b++) {
+				String values = (b * slidingWindow) + ";";
+				double clas = 0;
+				for (int a = 0; a < expNum; a++)
+					clas += results.get(a).deletions[b];
+				if (args.length == 0)
+					values += df.format(clas / expNum) + ";";
+				for (int a = 0; a < expNum; a++)
+					values += df.format((double) results.get(a).deletions[b]) + ";";
+				dele.append(values + "\r\n");
+			}
+			dele.flush();
+		} catch (IOException e) {
+			System.err.println("Error writing to file!");
+		}
+
+	}
 
-		// loop number of simulations		
-		for (int rs = 1; rs <= totalSims; rs++) {
-			correctness[rs - 1][0] = 0;
-			numOfClassf[rs - 1][0] = 0;
-			deletions[rs - 1][0] = 0;
+	/**
+	 * The values recorded by one simulation for each recording interval,
+	 * and its learning time in nanoseconds.
+	 */
+	private static class Result {
+		int[] correctness;
+		int[] numOfClassf;
+		int[] deletions;
+		long timeReq;
+	}
 
+	/**
+	 * The settings of an experiment and the simulation of one random seed.
+	 * Each simulation has its own learner and input generator.
+	 */
+	private static class Experiment implements ExperimentRunner.Simulation<Result> {
+		int numberOfActions;
+		int addressBits;
+		int inputLength;
+		int inputMode;
+		int maxTrial;
+		int slidingWindow;
+		int maxPopSize;
+		int Tcomb;
+		int indexBins;
+		int maxDispRate;
+		boolean debugMode;
+
+		public Result run(int rs, PrintWriter log) {
+			DecimalFormat df = new DecimalFormat("0.000");
+			Result result = new Result();
+			result.correctness = new int[maxTrial / slidingWindow + 1];
+			result.numOfClassf = new int[maxTrial / slidingWindow + 1];
+			result.deletions = new int[maxTrial / slidingWindow + 1];
+			int n = 20;
+
+			File outputFile = null;
 			if (debugMode) {
 				String filename = "MPX_Debug_";
 				if (rs<10) filename += "0";
@@ -136,17 +239,23 @@ public class MPX {
 			}
 
 			// activate XCS learning system
-			xcsLearn = new XCSManager(numberOfActions, maxPopSize[addressBits], Tcomb, debugMode, outputFile, rs * n);
+			XCSConfig config = new XCSConfig(rs * n);
+			config.maxPopSize = maxPopSize;
+			config.Tcomb = Tcomb;
+			config.indexBins = indexBins;
+			config.maxDispRate = maxDispRate;
+			XCSManager xcsLearn = new XCSManager(numberOfActions, config, debugMode, outputFile);
 
 			double[] state = new double[inputLength];
-			String stringState = "";
 			int rand = (int) (Math.random() * 10000);
-			rSeed.setSeed(rs);
+			Random rSeed = new Random(rs);
 			double reward = 0.;
 			int simCorrect = 0;
 			int action = 0;
 			boolean explore = false;
-			XCSConstants.deletion=0;
+
+			// initialize correctness rate for the first interval
+			int intervalCorrect = 0;
 
 			// learning cycle starts here
 			
@@ -154,29 +263,21 @@ public class MPX {
 				explore = (trial % 2 == 0);
 
 				// form input
-				stringState = "";
 				if (inputMode == 0) {
 					// binary
-					for (int i=0; i<inputLength; i++) {
+					for (int i=0; i<inputLength; i++)
 						state[i] = rSeed.nextInt(2);
-						stringState += (int) state[i];
-					}					
 				} else
 				if (inputMode == 1) {
 					// real
-					for (int i=0; i<inputLength; i++) {
+					for (int i=0; i<inputLength; i++)
 						state[i] = (double) Math.round(1000 * rSeed.nextDouble()) / 1000;
-						stringState += state[i];
-						if (i<inputLength-1) stringState +=";";
-					}					
 				}
-				
-				//System.out.println(stringState);
 
 				// feed to XCS
-				start_time = System.nanoTime();
-				action = xcsLearn.nextAction(stringState, (explore)?1:0);
-				timeReq[rs] += System.nanoTime() - start_time;
+				long start_time = System.nanoTime();
+				action = xcsLearn.nextAction(state, explore);
+				result.timeReq += System.nanoTime() - start_time;
 
 				// determine expected output
 				int pos = 0;
@@ -194,17 +295,17 @@ public class MPX {
 					}
 				}
 				start_time = System.nanoTime();
-				xcsLearn.updateActionSet(reward);
-				timeReq[rs] += System.nanoTime() - start_time;
+				xcsLearn.update(reward);
+				result.timeReq += System.nanoTime() - start_time;
 
 				// record result
 				if ((trial+1) % slidingWindow == 0) {
 					int popsize = xcsLearn.getPopSize();
-					correctness[rs - startRS][trial / slidingWindow+1] += intervalCorrect;
-					numOfClassf[rs - startRS][trial / slidingWindow+1] += popsize;
-					deletions[rs - startRS][trial / slidingWindow+1] += XCSConstants.deletion;
+					result.correctness[trial / slidingWindow+1] += intervalCorrect;
+					result.numOfClassf[trial / slidingWindow+1] += popsize;
+					result.deletions[trial / slidingWindow+1] += xcsLearn.getDeletionCount();
 					
-					System.out.println("Trial #"+(trial+1)+": Perf "+(float)2*intervalCorrect/slidingWindow+"; PopSize "+popsize);
+					log.println("Trial #"+(trial+1)+": Perf "+(float)2*intervalCorrect/slidingWindow+"; PopSize "+popsize);
 					xcsLearn.writeDebug("Trial #" + (trial+1));
 					intervalCorrect = 0;
 				}
@@ -224,81 +325,19 @@ public class MPX {
 					display += " ";
 				}
 				display += ": " + expectedOutput;
-				System.out.println(display);
+				log.println(display);
 				//*/
 
 			}
 
 			// record final population
-			System.out.println("SIM "+rs + ". " + rand + ";"
+			log.println("SIM "+rs + ". " + rand + ";"
 					+ df.format((double) simCorrect / (maxTrial / 2)) + ";"
-					+ xcsLearn.getPopSize() + ";" + XCSConstants.deletion + ";"
-					+ Math.round(timeReq[rs]/1e6) + "\n");
+					+ xcsLearn.getPopSize() + ";" + xcsLearn.getDeletionCount() + ";"
+					+ Math.round(result.timeReq/1e6) + "\n");
 			if (debugMode)
 				xcsLearn.writeDebug("Final Pop");
+			return result;
 		}
-
-		double difference = 0;
-		for (int i=startRS; i <= totalSims; i++) difference += timeReq[i]/1e6;
-		
-		System.out.println("MP"+inputLength+"; N="+maxPopSize[addressBits]+"; Tcomb="+Tcomb);
-		System.out.println("Average time in ms: " + Math.round(difference / totalSims));
-
-		for (int a = 0; a < expNum; a++)
-			title += ";RS-" + (a + startRS);
-		try {
-			corr.append(title + "\r\n");
-			for (int b = 0; b <= maxTrial / slidingWindow; b++) {
-				String values = (b * slidingWindow) + ";";
-				double perf = 0;
-				for (int a = 0; a < expNum; a++)
-					perf += correctness[a][b];
-				if (args.length == 0)
-					values += df.format(perf / (slidingWindow * expNum / 2)) + ";";
-				for (int a = 0; a < expNum; a++)
-					values += df.format((double) correctness[a][b] / (slidingWindow / 2)) + ";";
-				corr.append(values + "\r\n");
-			}
-			corr.flush();
-		} catch (IOException e) {
-			System.err.println("Error writing to file!");
-		}
-
-		try {
-			classf.append(title + "\r\n");
-			for (int b = 0; b <= maxTrial / slidingWindow; b++) {
-				String values = (b * slidingWindow) + ";";
-				double clas = 0;
-				for (int a = 0; a < expNum; a++)
-					clas += numOfClassf[a][b];
-				if (args.length == 0)
-					values += df.format(clas / expNum) + ";";
-				for (int a = 0; a < expNum; a++)
-					values += df.format((double) numOfClassf[a][b]) + ";";
-				classf.append(values + "\r\n");
-			}
-			classf.flush();
-		} catch (IOException e) {
-			System.err.println("Error writing to file!");
-		}
-
-		try {
-			dele.append(title + "\r\n");
-			for (int b = 0; b <= maxTrial / slidingWindow; b++) {
-				String values = (b * slidingWindow) + ";";
-				double clas = 0;
-				for (int a = 0; a < expNum; a++)
-					clas += deletions[a][b];
-				if (args.length == 0)
-					values += df.format(clas / expNum) + ";";
-				for (int a = 0; a < expNum; a++)
-					values += df.format((double) deletions[a][b]) + ";";
-				dele.append(values + "\r\n");
-			}
-			dele.flush();
-		} catch (IOException e) {
-			System.err.println("Error writing to file!");
-		}
-
 	}
 }
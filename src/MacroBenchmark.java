@@ -0,0 +1,342 @@
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * This class runs fixed-seed multiplexer and maze experiments end to end and
+ * checks the learning quality against a baseline. For each workload it
+ * reports the learning steps per second, the trials and time needed to reach
+ * 100% correctness, the final population size, the quality of the learned
+ * solution and the allocation rate of the learner.
+ *
+ * The quality values are compared with the baseline properties file; the
+ * program exits with status 1 if a workload learned worse than the baseline
+ * allows, so a change that makes the learner faster but worse is caught. The
+ * speed is reported only, as it depends on the machine.
+ *
+ * Usage: java MacroBenchmark [baseline file] [-update] [workload filter]
+ *
+ * With -update, the measured values are written to the baseline file.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ */
+public class MacroBenchmark {
+	/**
+	 * The number of consecutive correct exploit trials that count as 100%
+	 * correctness.
+	 */
+	private static final int correctWindow = 100;
+
+	/**
+	 * The number of exploit trials the final steps to food are averaged over.
+	 */
+	private static final int stepsWindow = 50;
+
+	/**
+	 * The default tolerances: the correctness may drop by the given absolute
+	 * value, the other values may grow by the given fraction.
+	 */
+	private static final double[] defaultTolerance = { 0.01, 0.10, 0.25, 0.10 };
+
+	/**
+	 * The names of the checked values.
+	 */
+	private static final String[] gates = { "correctness", "popSize", "trialsTo100", "steps" };
+
+	/**
+	 * The measured values of one workload, averaged over its seeds.
+	 */
+	private static class Result {
+		long steps;
+		long nanos;
+		long allocated;
+		double trialsTo100;
+		double msTo100;
+		double popSize;
+		double correctness = Double.NaN;
+		double foodSteps = Double.NaN;
+
+		/**
+		 * Adds the bytes allocated between two readings of allocatedBytes(),
+		 * or marks the allocation as unknown (-1) if a reading is.
+		 */
+		void addAllocated(long before, long after) {
+			if (before < 0 || after < 0 || allocated < 0)
+				allocated = -1;
+			else
+				allocated += after - before;
+		}
+
+		/**
+		 * Returns the checked value of the given gate, or NaN if the workload
+		 * does not have it.
+		 */
+		double get(int gate) {
+			switch (gate) {
+			case 0:
+				return correctness;
+			case 1:
+				return popSize;
+			case 2:
+				return Double.isNaN(correctness) ? Double.NaN : trialsTo100;
+			default:
+				return foodSteps;
+			}
+		}
+	}
+
+	/**
+	 * A fixed-seed experiment run for a number of seeds.
+	 */
+	private static abstract class Workload {
+		String name;
+		int seeds;
+		int trials;
+		int maxPopSize;
+		int Tcomb;
+
+		/**
+		 * Runs the experiment of one seed and adds its values to the result.
+		 */
+		abstract void run(int seed, Result result);
+	}
+
+	/**
+	 * A multiplexer problem, trained like MPX with alternating explore and
+	 * exploit trials.
+	 */
+	private static class Multiplexer extends Workload {
+		int addressBits;
+
+		Multiplexer(int addressBits, int maxPopSize, int Tcomb, int trials, int seeds) {
+			this.addressBits = addressBits;
+			this.maxPopSize = maxPopSize;
+			this.Tcomb = Tcomb;
+			this.trials = trials;
+			this.seeds = seeds;
+			this.name = "MP" + (addressBits + (1 << addressBits));
+		}
+
+		void run(int seed, Result result) {
+			int length = addressBits + (1 << addressBits);
+			XCSConfig config = new XCSConfig(seed * 20);
+			config.maxPopSize = maxPopSize;
+			config.Tcomb = Tcomb;
+			// allocations are measured on this thread only
+			config.parallelCombining = false;
+			XCSManager learner = new XCSManager(2, config, false, null);
+
+			Random input = new Random(seed);
+			double[] state = new double[length];
+			int correct = 0, run = 0, reached = -1;
+			long nanos = 0, nanosTo100 = 0;
+			long allocated = allocatedBytes();
+			for (int trial = 0; trial < trials; trial++) {
+				boolean explore = (trial % 2 == 0);
+				for (int i = 0; i < length; i++)
+					state[i] = input.nextInt(2);
+				int pos = 0;
+				for (int i = 0; i < addressBits; i++)
+					pos = 2 * pos + (int) state[i];
+
+				long start = System.nanoTime();
+				int action = learner.nextAction(state, explore);
+				boolean right = (action == (int) state[addressBits + pos]);
+				learner.update(right ? 1000 : 0);
+				nanos += System.nanoTime() - start;
+
+				if (!explore) {
+					if (right)
+						correct++;
+					run = right ? run + 1 : 0;
+					if (run == correctWindow && reached < 0) {
+						reached = trial + 1;
+						nanosTo100 = nanos;
+					}
+				}
+			}
+			result.addAllocated(allocated, allocatedBytes());
+			result.nanos += nanos;
+			result.steps += trials;
+			result.popSize += (double) learner.getPopSize() / seeds;
+			if (Double.isNaN(result.correctness))
+				result.correctness = 0;
+			result.correctness += (double) correct / (trials / 2) / seeds;
+			result.trialsTo100 += (double) ((reached < 0) ? trials : reached) / seeds;
+			result.msTo100 += ((reached < 0) ? nanos : nanosTo100) / 1e6 / seeds;
+		}
+	}
+
+	/**
+	 * A maze, trained like ENV with alternating explore and exploit trials.
+	 */
+	private static class Maze extends Workload {
+		Maze(String name, int maxPopSize, int Tcomb, int trials, int seeds) {
+			this.name = name;
+			this.maxPopSize = maxPopSize;
+			this.Tcomb = Tcomb;
+			this.trials = trials;
+			this.seeds = seeds;
+		}
+
+		void run(int seed, Result result) {
+			MazeEnvironment env = new MazeEnvironment("Environments/" + name + ".txt", 3);
+			XCSConfig config = new XCSConfig(seed * 99);
+			config.maxPopSize = maxPopSize;
+			config.Tcomb = Tcomb;
+			// allocations are measured on this thread only
+			config.parallelCombining = false;
+			XCSManager learner = new XCSManager(env, config, false, null);
+
+			int[] stepsToFood = new int[stepsWindow];
+			double[] sysError = new double[stepsWindow];
+			long steps = 0, nanos = 0;
+			long allocated = allocatedBytes();
+			int explore = 0;
+			for (int trial = 0; trial <= trials; trial += explore) {
+				explore = (explore + 1) % 2;
+				double[] state = env.resetState();
+				long start = System.nanoTime();
+				steps += learner.doOneMultiStep(state, explore, stepsToFood, sysError, trial, 0);
+				nanos += System.nanoTime() - start;
+			}
+			result.addAllocated(allocated, allocatedBytes());
+			result.nanos += nanos;
+			result.steps += steps;
+			result.popSize += (double) learner.getPopSize() / seeds;
+
+			double foodSteps = 0;
+			for (int i = 0; i < stepsWindow; i++)
+				foodSteps += stepsToFood[i];
+			if (Double.isNaN(result.foodSteps))
+				result.foodSteps = 0;
+			result.foodSteps += foodSteps / stepsWindow / seeds;
+		}
+	}
+
+	public static void main(String[] args) {
+		String baselineFile = "MacroBenchmark.properties";
+		boolean update = false;
+		String filter = "";
+		int positional = 0;
+		for (String arg : args) {
+			if (arg.equals("-update"))
+				update = true;
+			else if (positional++ == 0)
+				baselineFile = arg;
+			else
+				filter = arg;
+		}
+
+		List<Workload> workloads = new ArrayList<Workload>();
+		workloads.add(new Multiplexer(2, 400, 100, 4000, 5));
+		workloads.add(new Multiplexer(3, 800, 200, 20000, 3));
+		workloads.add(new Maze("Woods2", 800, 100, 2000, 3));
+		workloads.add(new Maze("Woods1", 800, 100, 2000, 3));
+
+		Properties baseline = new Properties();
+		try {
+			InputStream in = new FileInputStream(baselineFile);
+			baseline.load(in);
+			in.close();
+		} catch (IOException e) {
+			if (!update)
+				System.err.println("No baseline " + baselineFile + ", quality is not checked.");
+		}
+
+		// warm up the compiler so that the first workload is not measured
+		// while being interpreted
+		workloads.get(0).run(0, new Result());
+
+		System.out.println("Workload;Seeds;Steps/s;TrialsTo100;msTo100;PopSize;Correctness;StepsToFood;MB/s");
+		int failures = 0;
+		for (Workload w : workloads) {
+			if (!w.name.contains(filter))
+				continue;
+			Result result = new Result();
+			for (int seed = 1; seed <= w.seeds; seed++)
+				w.run(seed, result);
+
+			double seconds = result.nanos / 1e9;
+			System.out.println(w.name + ";" + w.seeds + ";"
+					+ Math.round(result.steps / seconds) + ";"
+					+ format(result.get(2)) + ";"
+					+ (Double.isNaN(result.correctness) ? "-" : format(result.msTo100)) + ";"
+					+ format(result.popSize) + ";"
+					+ format(result.correctness) + ";"
+					+ format(result.foodSteps) + ";"
+					+ ((result.allocated < 0) ? "-" : format(result.allocated / 1e6 / seconds)));
+
+			for (int g = 0; g < gates.length; g++) {
+				double value = result.get(g);
+				if (Double.isNaN(value))
+					continue;
+				String key = w.name + "." + gates[g];
+				if (update) {
+					baseline.setProperty(key, format(value));
+					continue;
+				}
+				String expected = baseline.getProperty(key);
+				if (expected == null)
+					continue;
+				double limit = Double.parseDouble(expected);
+				double tolerance = Double.parseDouble(baseline.getProperty("tolerance." + gates[g],
+						String.valueOf(defaultTolerance[g])));
+				boolean failed = (g == 0) ? value < limit - tolerance : value > limit * (1 + tolerance);
+				if (failed) {
+					System.err.println("REGRESSION " + key + ": " + format(value)
+							+ " against baseline " + expected);
+					failures++;
+				}
+			}
+		}
+
+		if (update) {
+			for (int g = 0; g < gates.length; g++)
+				if (baseline.getProperty("tolerance." + gates[g]) == null)
+					baseline.setProperty("tolerance." + gates[g], String.valueOf(defaultTolerance[g]));
+			try {
+				OutputStream out = new FileOutputStream(baselineFile);
+				baseline.store(out, "MacroBenchmark baseline");
+				out.close();
+			} catch (IOException e) {
+				System.err.println("Error writing to file " + baselineFile + "!");
+			}
+		}
+
+		if (failures > 0) {
+			System.err.println(failures + " quality regressions.");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Returns the bytes allocated by the current thread so far, or -1 if the
+	 * JVM does not measure them. The learners are configured not to combine
+	 * on other threads, so this covers all their allocations.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+			if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled())
+				return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * Formats a value with three decimals, or "-" for NaN.
+	 */
+	private static String format(double value) {
+		return Double.isNaN(value) ? "-" : String.format(java.util.Locale.ROOT, "%.3f", value);
+	}
+}
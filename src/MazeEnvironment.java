@@ -2,6 +2,7 @@
 import java.io.Serializable;
 import java.io.FileReader;
 import java.io.BufferedReader;
+import java.util.Random;
 import java.util.Vector;
 
 /**
@@ -94,6 +95,11 @@ public class MazeEnvironment implements Environment, Serializable
      */
     private boolean reset;
 
+    /**
+     * The random source for the start positions, normally the one of the learner.
+     */
+    private Random random=new Random();
+
     /**
      * The constructor reads in the specified maze file and sets its global parameters accordingly.
      *
@@ -166,14 +172,22 @@ public class MazeEnvironment implements Environment, Serializable
 	setRandomPosition();
     }
 
+    /**
+     * Sets the random source for the start positions.
+     */
+    public void setRandom(Random random)
+    {
+	this.random=random;
+    }
+
     /**
      * Sets the animat to a randomly selected empty position.
      */
     private void setRandomPosition()
     {
 	do{
-	    xcurrent=(int)(XCSConstants.random.nextDouble()*xsize);
-	    ycurrent=(int)(XCSConstants.random.nextDouble()*ysize);
+	    xcurrent=(int)(random.nextDouble()*xsize);
+	    ycurrent=(int)(random.nextDouble()*ysize);
 	}while(maze[xcurrent*attributeLength][ycurrent]!=freeAtt[0] || maze[xcurrent*attributeLength+1][ycurrent]!=freeAtt[1]);     
     }
 
@@ -0,0 +1,250 @@
+import java.util.IdentityHashMap;
+
+/**
+ * This class indexes the classifiers of a combining set for the queries of
+ * rule combining: which classifiers overlap a candidate condition, and which
+ * are contained in it. Every input dimension is divided into bins as in
+ * IntervalIndex, and every bin keeps a bit set over the classifiers touching
+ * it. A query intersects, over all dimensions the candidate condition
+ * restricts, the union of the bit sets of the bins the condition touches.
+ * The result contains all overlapping classifiers, and with them all
+ * contained ones; the caller still has to check each of them exactly.
+ *
+ * For binary conditions two bins are used, so the bit sets hold the
+ * classifiers accepting 0 and accepting 1 in each attribute.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ * @see IntervalIndex
+ */
+public class OverlapIndex {
+	/**
+	 * The number of dimensions and of bins per dimension.
+	 */
+	private int dims, bins;
+
+	/**
+	 * The bit set of each bin, the bin b of dimension d at position d*bins+b.
+	 * Bit n of a bit set stands for the classifier with id n.
+	 */
+	private long[][] cells;
+
+	/**
+	 * The classifiers by id, null for unused ids.
+	 */
+	private XClassifier[] byId;
+
+	/**
+	 * The ids of the indexed classifiers.
+	 */
+	private IdentityHashMap<XClassifier, Integer> ids;
+
+	/**
+	 * Ids freed by removals, reused by later additions.
+	 */
+	private int[] free;
+	private int freeCount;
+
+	/**
+	 * The lowest id never used so far.
+	 */
+	private int nextId;
+
+	/**
+	 * Buffers for the query result and the union of bins.
+	 */
+	private long[] mask, union;
+
+	/**
+	 * Creates an empty index.
+	 *
+	 * @param dims
+	 *            The number of attributes of the indexed conditions.
+	 * @param bins
+	 *            The number of bins per attribute.
+	 * @param capacity
+	 *            The expected number of classifiers.
+	 */
+	public OverlapIndex(int dims, int bins, int capacity) {
+		this.dims = dims;
+		this.bins = bins;
+		capacity = Math.max(64, capacity);
+		cells = new long[dims * bins][BinaryCondition.words(capacity)];
+		byId = new XClassifier[capacity];
+		ids = new IdentityHashMap<XClassifier, Integer>();
+		free = new int[capacity];
+		mask = new long[BinaryCondition.words(capacity)];
+		union = new long[mask.length];
+	}
+
+	/**
+	 * Returns the number of ids the index can hold before it grows, which is
+	 * also the size needed for the result array of a query.
+	 */
+	public int capacity() {
+		return byId.length;
+	}
+
+	/**
+	 * Returns if the classifier is indexed.
+	 */
+	public boolean contains(XClassifier cl) {
+		return ids.containsKey(cl);
+	}
+
+	/**
+	 * Adds the classifier to the index.
+	 */
+	public void add(XClassifier cl) {
+		int id;
+		if (freeCount > 0)
+			id = free[--freeCount];
+		else {
+			if (nextId == byId.length)
+				grow();
+			id = nextId++;
+		}
+		byId[id] = cl;
+		ids.put(cl, id);
+		setBits(cl, id, true);
+	}
+
+	/**
+	 * Removes the classifier from the index.
+	 */
+	public void remove(XClassifier cl) {
+		Integer id = ids.remove(cl);
+		if (id == null)
+			return;
+		setBits(cl, id, false);
+		byId[id] = null;
+		free[freeCount++] = id;
+	}
+
+	/**
+	 * Sets or clears the bit of the given id in all bins touched by the
+	 * condition of the classifier.
+	 */
+	private void setBits(XClassifier cl, int id, boolean value) {
+		double[] elements = cl.getElements();
+		int word = id >>> 6;
+		long bit = 1L << id;
+		for (int d = 0; d < dims; d++) {
+			int last = d * bins + IntervalIndex.bin(elements[2*d+1], bins);
+			for (int c = d * bins + IntervalIndex.bin(elements[2*d], bins); c <= last; c++)
+				if (value)
+					cells[c][word] |= bit;
+				else
+					cells[c][word] &= ~bit;
+		}
+	}
+
+	/**
+	 * Doubles the number of ids the index can hold.
+	 */
+	private void grow() {
+		int capacity = 2 * byId.length;
+		int words = BinaryCondition.words(capacity);
+		for (int c = 0; c < cells.length; c++) {
+			long[] cell = new long[words];
+			System.arraycopy(cells[c], 0, cell, 0, cells[c].length);
+			cells[c] = cell;
+		}
+		XClassifier[] grownIds = new XClassifier[capacity];
+		System.arraycopy(byId, 0, grownIds, 0, byId.length);
+		byId = grownIds;
+		int[] grownFree = new int[capacity];
+		System.arraycopy(free, 0, grownFree, 0, freeCount);
+		free = grownFree;
+		mask = new long[words];
+		union = new long[words];
+	}
+
+	/**
+	 * Starts a query with all used ids selected.
+	 */
+	private void selectAll() {
+		int words = BinaryCondition.words(nextId);
+		for (int w = 0; w < mask.length; w++)
+			mask[w] = (w < words) ? -1L : 0L;
+		if ((nextId & 63) != 0)
+			mask[words - 1] = (1L << nextId) - 1;
+	}
+
+	/**
+	 * Copies the selected classifiers into out.
+	 */
+	private int collect(XClassifier[] out) {
+		int found = 0;
+		for (int w = 0; w < mask.length; w++) {
+			long m = mask[w];
+			while (m != 0) {
+				XClassifier cl = byId[(w << 6) + Long.numberOfTrailingZeros(m)];
+				if (cl != null)
+					out[found++] = cl;
+				m &= m - 1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Copies all classifiers possibly overlapping the given condition into
+	 * out.
+	 *
+	 * @param box
+	 *            The condition as lower and upper bound pairs.
+	 * @param out
+	 *            Receives the candidates, must hold capacity() entries.
+	 * @return the number of candidates.
+	 */
+	public int query(double[] box, XClassifier[] out) {
+		selectAll();
+		for (int d = 0; d < dims; d++) {
+			int first = IntervalIndex.bin(box[2*d], bins);
+			int last = IntervalIndex.bin(box[2*d+1], bins);
+			if (first == 0 && last == bins - 1)
+				continue;
+			long[] cell = cells[d * bins + first];
+			if (first < last) {
+				System.arraycopy(cell, 0, union, 0, union.length);
+				for (int c = d * bins + first + 1; c <= d * bins + last; c++)
+					for (int w = 0; w < union.length; w++)
+						union[w] |= cells[c][w];
+				cell = union;
+			}
+			for (int w = 0; w < mask.length; w++)
+				mask[w] &= cell[w];
+		}
+		return collect(out);
+	}
+
+	/**
+	 * Copies all classifiers possibly overlapping the given bit-packed binary
+	 * condition into out.
+	 *
+	 * @param cond
+	 *            The condition in the form of BinaryCondition.
+	 * @param out
+	 *            Receives the candidates, must hold capacity() entries.
+	 * @return the number of candidates.
+	 */
+	public int query(long[] cond, XClassifier[] out) {
+		selectAll();
+		int words = cond.length / 2;
+		int zero = IntervalIndex.bin(0.0, bins);
+		int one = IntervalIndex.bin(1.0, bins);
+		for (int cw = 0; cw < words; cw++) {
+			long care = cond[cw];
+			while (care != 0) {
+				int bit = Long.numberOfTrailingZeros(care);
+				int d = (cw << 6) + bit;
+				long[] cell = cells[d * bins + (((cond[words + cw] >>> bit) & 1L) != 0 ? one : zero)];
+				for (int w = 0; w < mask.length; w++)
+					mask[w] &= cell[w];
+				care &= care - 1;
+			}
+		}
+		return collect(out);
+	}
+}
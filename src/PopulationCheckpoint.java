@@ -0,0 +1,285 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * This class stores a population with the counters of its learner in a
+ * versioned binary file, so that a learner can be restarted without
+ * retraining. The file is written through a file channel and read through a
+ * memory mapping.
+ *
+ * The file consists of little-endian values:
+ * <ul>
+ * <li>the header: magic number, version, number of actions, learning cycles,
+ * exploration count, deletion count, the changed flag as one byte, the number
+ * of niches followed by one combining mark byte per niche, and the number of
+ * classifiers,
+ * <li>one record per classifier: action, number of attributes, encoding byte
+ * and condition, then prediction, prediction error, fitness, action set size
+ * and combining prediction as doubles, numerosity, experience and disproving
+ * as ints and the dirty flag as one byte. Binary conditions are stored in
+ * their packed form of BinaryCondition, the others as interval bounds,
+ * <li>the CRC-32 of everything before as a long.
+ * </ul>
+ * The settings and the random source of the learner are not stored.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ * @see XCSManager#saveCheckpoint
+ * @see XCSManager#loadCheckpoint
+ */
+public class PopulationCheckpoint {
+	/**
+	 * The first four bytes of a checkpoint, "XCSC".
+	 */
+	static final int MAGIC = 0x58435343;
+
+	/**
+	 * The version of the format written.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * The encodings of a condition.
+	 */
+	private static final byte REAL = 0, BINARY = 1;
+
+	/**
+	 * The size of the write buffer. It is a heap buffer, so no direct memory
+	 * is taken per save.
+	 */
+	private static final int BUFFER = 1 << 16;
+
+	XClassifierSet population;
+	int numberOfActions;
+	int cycles;
+	int explorationCount;
+
+	/**
+	 * The channel, buffer and checksum while writing.
+	 */
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private CRC32 crc;
+
+	PopulationCheckpoint(XClassifierSet population, int numberOfActions, int cycles, int explorationCount) {
+		this.population = population;
+		this.numberOfActions = numberOfActions;
+		this.cycles = cycles;
+		this.explorationCount = explorationCount;
+	}
+
+	/**
+	 * Writes the checkpoint. It is written to a temporary file first which
+	 * then replaces the given file, so an existing checkpoint is not lost if
+	 * writing fails.
+	 */
+	void write(File file) throws IOException {
+		Path target = file.toPath();
+		Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+		channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		buffer = ByteBuffer.allocate(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+		crc = new CRC32();
+		try {
+			byte[] marks = population.getNicheMarks();
+			int size = population.getSize();
+			ensure(33 + marks.length);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(numberOfActions);
+			buffer.putInt(cycles);
+			buffer.putInt(explorationCount);
+			buffer.putInt(population.getDeletionCount());
+			buffer.put((byte) (population.changed ? 1 : 0));
+			buffer.putInt(marks.length);
+			buffer.put(marks);
+			buffer.putInt(size);
+
+			for (int i = 0; i < size; i++) {
+				XClassifier cl = population.elementAt(i);
+				double[] elements = cl.getElements();
+				long[] bits = cl.getBits();
+				int attributes = elements.length / 2;
+				ensure(62 + ((bits != null) ? 8 * bits.length : 8 * elements.length));
+				buffer.putInt(cl.getAction());
+				buffer.putInt(attributes);
+				if (bits != null) {
+					buffer.put(BINARY);
+					for (long word : bits)
+						buffer.putLong(word);
+				} else {
+					buffer.put(REAL);
+					for (double bound : elements)
+						buffer.putDouble(bound);
+				}
+				buffer.putDouble(cl.getPrediction());
+				buffer.putDouble(cl.getPredictionError());
+				buffer.putDouble(cl.getFitness());
+				buffer.putDouble(cl.getActionSetSize());
+				buffer.putDouble(cl.getCombPrediction());
+				buffer.putInt(cl.getNumerosity());
+				buffer.putInt(cl.getExperience());
+				buffer.putInt(cl.getDisproving());
+				buffer.put((byte) (cl.isDirty() ? 1 : 0));
+			}
+			flush();
+			buffer.putLong(crc.getValue());
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(false);
+		} finally {
+			channel.close();
+			channel = null;
+			buffer = null;
+			crc = null;
+		}
+		try {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Makes room for the given number of bytes in the write buffer.
+	 */
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() >= bytes)
+			return;
+		flush();
+		if (buffer.capacity() < bytes)
+			buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Writes the buffer to the channel and adds it to the checksum.
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		crc.update(buffer.duplicate());
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Reads a checkpoint into a new population.
+	 * 
+	 * @param file
+	 *            The checkpoint.
+	 * @param numberOfActions
+	 *            The number of actions of the learner, which must be the one
+	 *            the checkpoint was written with.
+	 * @param config
+	 *            The settings and random source of the new population.
+	 * @return the checkpoint holding the population and the counters.
+	 * @throws IOException
+	 *             if the file cannot be read, is corrupt or does not fit the
+	 *             learner.
+	 */
+	static PopulationCheckpoint read(File file, int numberOfActions, XCSConfig config) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE)
+				throw new IOException("Checkpoint " + file + " is too large.");
+			if (length < 8)
+				throw new IOException("Checkpoint " + file + " is truncated.");
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			map.order(ByteOrder.LITTLE_ENDIAN);
+
+			ByteBuffer body = map.duplicate();
+			body.limit((int) length - 8);
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			if (crc.getValue() != map.getLong((int) length - 8))
+				throw new IOException("Checkpoint " + file + " is corrupt.");
+			map.limit((int) length - 8);
+
+			if (map.getInt() != MAGIC)
+				throw new IOException(file + " is not a checkpoint.");
+			int version = map.getInt();
+			if (version != VERSION)
+				throw new IOException("Checkpoint " + file + " has the unknown version " + version + ".");
+			int actions = map.getInt();
+			if (actions != numberOfActions)
+				throw new IOException("Checkpoint " + file + " has " + actions + " actions instead of "
+						+ numberOfActions + ".");
+
+			XClassifierSet pop = new XClassifierSet(numberOfActions, config);
+			PopulationCheckpoint checkpoint = new PopulationCheckpoint(pop, numberOfActions, map.getInt(), map.getInt());
+			int deletions = map.getInt();
+			boolean changed = map.get() != 0;
+			int niches = map.getInt();
+			if (niches < 0 || niches > numberOfActions)
+				throw new IOException("Checkpoint " + file + " is corrupt.");
+			byte[] marks = new byte[niches];
+			map.get(marks);
+			int size = map.getInt();
+			if (size < 0 || size > config.maxPopSize + numberOfActions)
+				throw new IOException("Checkpoint " + file + " holds " + size
+						+ " classifiers, more than the population of the learner takes.");
+
+			for (int i = 0; i < size; i++) {
+				int action = map.getInt();
+				int attributes = map.getInt();
+				if (action < 0 || action >= numberOfActions || attributes < 0)
+					throw new IOException("Checkpoint " + file + " is corrupt.");
+				double[] elements;
+				byte encoding = map.get();
+				// the condition has to fit into the rest of the file
+				long conditionBytes = (encoding == BINARY) ? 16L * ((attributes + 63L) >>> 6)
+						: 16L * attributes;
+				if (conditionBytes > map.remaining())
+					throw new IOException("Checkpoint " + file + " is corrupt.");
+				if (encoding == BINARY) {
+					long[] bits = new long[2 * BinaryCondition.words(attributes)];
+					for (int w = 0; w < bits.length; w++)
+						bits[w] = map.getLong();
+					elements = BinaryCondition.unpack(bits, attributes);
+				} else if (encoding == REAL) {
+					elements = new double[2 * attributes];
+					for (int e = 0; e < elements.length; e++)
+						elements[e] = map.getDouble();
+				} else
+					throw new IOException("Checkpoint " + file + " is corrupt.");
+
+				double prediction = map.getDouble();
+				double predictionError = map.getDouble();
+				double fitness = map.getDouble();
+				double actionSetSize = map.getDouble();
+				double combPrediction = map.getDouble();
+				int numerosity = map.getInt();
+				int experience = map.getInt();
+				int disproving = map.getInt();
+				boolean dirty = map.get() != 0;
+
+				XClassifier cl = new XClassifier(elements, action, prediction, predictionError,
+						fitness, numerosity, experience, 0);
+				cl.restore(actionSetSize, disproving, dirty, combPrediction);
+				pop.addClassifier(cl);
+			}
+			if (map.hasRemaining())
+				throw new IOException("Checkpoint " + file + " is corrupt.");
+			pop.restore(deletions, marks);
+			pop.changed = changed;
+			return checkpoint;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Checkpoint " + file + " is truncated.");
+		} finally {
+			channel.close();
+		}
+	}
+}
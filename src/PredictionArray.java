@@ -1,5 +1,6 @@
 
 import java.io.Serializable;
+import java.util.Random;
 
 
 /**
@@ -25,26 +26,63 @@ public class PredictionArray implements Serializable
      */
     private double[] nr;
     private int[] ex;
+
+    /**
+     * Buffers for the candidate actions in exploreActionWinner and luckyBestActionWinner.
+     */
+    private int[] low, tops;
+
+    /**
+     * The random source of the learner, used by the action selection functions.
+     */
+    private Random random;
     
     /**
      * Constructs the prediction array according to the current set and the possible number of actions.
      *
      * @param set The classifier set out of which a prediction array is formed (normally the match set).
      * @param numberOfActions The number of actions possible in the environment.     
+     * @param random The random source of the learner.
      */
-    public PredictionArray(XClassifierSet set, int numberOfActions, int minExp){
+    public PredictionArray(XClassifierSet set, int numberOfActions, int minExp, Random random){
+	this.random = random;
+	update(set, numberOfActions, minExp);
+    }
+
+    /**
+     * Forms the prediction array again out of the given set, reusing its arrays.
+     *
+     * @param set The classifier set out of which a prediction array is formed (normally the match set).
+     * @param numberOfActions The number of actions possible in the environment.     
+     */
+    public void update(XClassifierSet set, int numberOfActions, int minExp){
     
 	    int size = numberOfActions;
 	    
-		pa= new double[size];
-		nr= new double[size];
-		ex= new int[size];
+		if (pa==null || pa.length!=size) {
+		    pa= new double[size];
+		    nr= new double[size];
+		    ex= new int[size];
+		    low= new int[size];
+		    tops= new int[size];
+		}
 		
 		for(int i=0; i<size; i++){
 		    pa[i]=0.;
 		    nr[i]=0.;
 		    ex[i]=999999;
 		}
+		double[] predictionSums = set.getActionPredictionSums();
+		if (predictionSums != null && predictionSums.length == size) {
+		    // the match set summed up its classifiers when it was built
+		    double[] fitnessSums = set.getActionFitnessSums();
+		    int[] minExperiences = set.getActionMinExperiences();
+		    for(int i=0; i<size; i++){
+			pa[i]=predictionSums[i];
+			nr[i]=fitnessSums[i];
+			if (minExperiences[i] < minExp) ex[i]=minExperiences[i];
+		    }
+		}else
 		for(int i=0; i<set.getSize(); i++){
 		    XClassifier cl= set.elementAt(i);
 		    int index = cl.getAction();
@@ -95,7 +133,7 @@ public class PredictionArray implements Serializable
     {
 	int ret=0;
 	do{
-	    ret = (int)(XCSConstants.random.nextDouble()*pa.length);
+	    ret = (int)(random.nextDouble()*pa.length);
 	}while(nr[ret]==0);
 	return ret;
     }
@@ -107,13 +145,12 @@ public class PredictionArray implements Serializable
     public int exploreActionWinner(int numberOfActions, int minExp)
     {
     int lows = 0;
-    int[] low = new int[numberOfActions];
     
    	for (int i=0;i<numberOfActions;i++)
    		if (ex[i] < minExp && pa[i] >= 0) low[lows++] = i;
    			
    	if (lows>0)
-   		return low[XCSConstants.random.nextInt(lows)];   		
+   		return low[random.nextInt(lows)];   		
    	
    	return randomActionWinner(numberOfActions);
     }
@@ -139,7 +176,6 @@ public class PredictionArray implements Serializable
     {
 	int ret=0;
 	int top=0;
-	int[] tops = new int[numberOfActions];
 	tops[0]=0;
 	for(int i=1; i<pa.length; i++){
 	    if(pa[ret]<pa[i]) {
@@ -152,7 +188,7 @@ public class PredictionArray implements Serializable
 	    	tops[++top]=i;
 	}
 	if (top > 0)
-		ret = tops[(int) Math.floor((top+1) * XCSConstants.random.nextDouble())];
+		ret = tops[(int) Math.floor((top+1) * random.nextDouble())];
 	return ret;
     }
     
@@ -166,7 +202,7 @@ public class PredictionArray implements Serializable
 	for(i=0; i<pa.length; i++)
 	    bidSum+=pa[i];
 	
-	bidSum*=XCSConstants.random.nextDouble();
+	bidSum*=random.nextDouble();
 	double bidC=0.;
 	for(i=0; bidC<bidSum; i++){
 	    bidC+=pa[i];
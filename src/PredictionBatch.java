@@ -0,0 +1,121 @@
+import java.io.Serializable;
+
+/**
+ * This class holds the prediction arrays and best actions of a batch of
+ * states, as computed by XCSManager.predictBatch(). Entries are formed like
+ * in PredictionArray: the fitness weighted mean prediction of the matching
+ * classifiers advocating an action, or -1 if no classifier matches.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ * @see XCSManager#predictBatch(double[][])
+ */
+public class PredictionBatch implements Serializable {
+	/**
+	 * The number of states and of possible actions.
+	 */
+	private int size;
+	private int numberOfActions;
+
+	/**
+	 * The prediction arrays, the entry of action a for state s at position
+	 * s*numberOfActions+a. Holds the sums of prediction times fitness until
+	 * finish() is called.
+	 */
+	double[] predictions;
+
+	/**
+	 * The sums of the fitnesses of the matching classifiers, laid out like
+	 * predictions.
+	 */
+	double[] fitnessSums;
+
+	/**
+	 * The best action of each state, -1 if no classifier matches it.
+	 */
+	private int[] bestActions;
+
+	/**
+	 * Creates an empty batch.
+	 *
+	 * @param size
+	 *            The number of states.
+	 * @param numberOfActions
+	 *            The number of actions possible in the environment.
+	 */
+	PredictionBatch(int size, int numberOfActions) {
+		this.size = size;
+		this.numberOfActions = numberOfActions;
+		predictions = new double[size * numberOfActions];
+		fitnessSums = new double[size * numberOfActions];
+		bestActions = new int[size];
+	}
+
+	/**
+	 * Turns the summed up predictions into prediction arrays and selects the
+	 * best action of each state. Ties go to the lowest action, as in
+	 * PredictionArray.bestActionWinner().
+	 */
+	void finish() {
+		for (int s = 0, base = 0; s < size; s++, base += numberOfActions) {
+			int best = -1;
+			for (int a = 0; a < numberOfActions; a++) {
+				if (fitnessSums[base + a] != 0) {
+					predictions[base + a] /= fitnessSums[base + a];
+					if (best < 0 || predictions[base + best] < predictions[base + a])
+						best = a;
+				} else
+					predictions[base + a] = -1;
+			}
+			bestActions[s] = best;
+		}
+		fitnessSums = null;
+	}
+
+	/**
+	 * Returns the number of states in the batch.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of actions of each prediction array.
+	 */
+	public int getNumberOfActions() {
+		return numberOfActions;
+	}
+
+	/**
+	 * Returns the entry of the given action in the prediction array of the
+	 * given state.
+	 */
+	public double getValue(int state, int action) {
+		if (action >= 0 && action < numberOfActions)
+			return predictions[state * numberOfActions + action];
+		return -1.;
+	}
+
+	/**
+	 * Returns the highest value in the prediction array of the given state.
+	 */
+	public double getBestValue(int state) {
+		int best = bestActions[state];
+		return (best < 0) ? -1. : predictions[state * numberOfActions + best];
+	}
+
+	/**
+	 * Returns the action with the highest prediction for the given state, or
+	 * -1 if no classifier matches the state.
+	 */
+	public int getBestAction(int state) {
+		return bestActions[state];
+	}
+
+	/**
+	 * Copies the prediction array of the given state into out.
+	 */
+	public void getPredictionArray(int state, double[] out) {
+		System.arraycopy(predictions, state * numberOfActions, out, 0, numberOfActions);
+	}
+}
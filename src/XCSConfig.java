@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class holds the settings and the random source of one learner. Unlike
+ * the constants in XCSConstants they belong to a single XCSManager and the
+ * sets it creates, so several learners can run in one JVM, also in parallel
+ * threads, each with reproducible results for its seed. A configuration must
+ * not be shared by learners running at the same time.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ * @see XCSConstants
+ */
+public class XCSConfig implements Serializable {
+	/**
+	 * Specifies the maximal number of micro-classifiers in the population.
+	 */
+	public int maxPopSize = 800;
+
+	/**
+	 * The combining period in cycles, 0 disables combining.
+	 */
+	public int Tcomb = 50;
+
+	/**
+	 * The disproval rate as a power of ten above which a classifier is
+	 * removed as an outlier, 0 disables outlier detection.
+	 */
+	public int maxDispRate = 0;
+
+	/**
+	 * The number of bins per input dimension of the interval index used to
+	 * construct match sets (0 disables the index). Worthwhile for real-valued
+	 * inputs, where most classifiers do not match a given state.
+	 */
+	public int indexBins = 0;
+
+	/**
+	 * Debug mode for the incrementally maintained population sums: when set,
+	 * each access cross-checks them against a full recomputation.
+	 */
+	public boolean checkSums = false;
+
+	/**
+	 * Combines the niches of the different actions concurrently on
+	 * combiningPool. The result does not depend on this setting.
+	 */
+	public boolean parallelCombining = false;
+
+	/**
+	 * The pool the niches are combined on if parallelCombining is set, null
+	 * uses the common ForkJoin pool, which is shared by all learners of the
+	 * JVM. Not serialized.
+	 */
+	public transient ForkJoinPool combiningPool = null;
+
+	/**
+	 * Restricts combining to the niches and classifiers that changed since
+	 * the last combining (new classifiers, experience reaching minExp,
+	 * prediction drift beyond predTol). A niche losing an experienced
+	 * classifier is checked completely.
+	 * 
+	 * This is a heuristic and off by default: a classifier whose prediction
+	 * drifts less than predTol from the last combining is not checked again,
+	 * so pairs that would now combine, or disproving classifiers that would
+	 * now block a combination, can be missed. The population can therefore
+	 * differ from the one combined completely each time.
+	 */
+	public boolean incrementalCombining = false;
+
+	/**
+	 * The random source of the learner.
+	 */
+	public final Random random;
+
+	/**
+	 * Receives the phase latencies and event counts of the learner. Not
+	 * serialized, a deserialized configuration reports to NONE.
+	 */
+	public transient XCSMetrics metrics = XCSMetrics.NONE;
+
+	/**
+	 * Creates a configuration with default settings and an unseeded random
+	 * source.
+	 */
+	public XCSConfig() {
+		random = new Random();
+	}
+
+	/**
+	 * Creates a configuration with default settings.
+	 * 
+	 * @param seed
+	 *            The seed of the random source.
+	 */
+	public XCSConfig(long seed) {
+		random = new Random(seed);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		metrics = XCSMetrics.NONE;
+	}
+}
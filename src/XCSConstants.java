@@ -1,6 +1,5 @@
 
 import java.io.Serializable;
-import java.util.Random;
 
 /**
  * This class provides all relevant learning parameters for the XCS as well as 
@@ -14,13 +13,6 @@ import java.util.Random;
 public class XCSConstants implements Serializable
 {
 
-    /**
-     * Specifies the maximal number of micro-classifiers in the population.
-     * In the multiplexer problem this value is set to 400, 800, 2000 in the 6, 11, 20 multiplexer resp..
-     * In the Woods1 and Woods2 environment the parameter was set to 800. 
-     */
-    public static int maxPopSize=800;
-
     /**
      * The fall of rate in the fitness evaluation.
      */
@@ -88,17 +80,35 @@ public class XCSConstants implements Serializable
      */
     final public static char dontCare='#';
 
-    /**
-     * Random variable
-     */
-    final public static Random random = new Random();
-
     final public static double predTol=10;
     final public static double predErrTol=260.; //ENV 5., MPX 100.
     final public static int minExp=1; //ENV 1, MPX 1
-    public static int Tcomb=50;
-    public static int maxDispRate=0; // for outlier detection
-    public static int deletion=0;
+
+    /**
+     * The number of population changes an adaptive combining period aims at,
+     * and the factor by which the period may deviate from Tcomb.
+     * 
+     * @see CombiningScheduler
+     */
+    final public static int combTarget=20;
+    final public static int combPeriodRange=10;
+
+    /**
+     * The value range divided into bins by the interval index.
+     */
+    final public static double indexLow=0.;
+    final public static double indexHigh=1.;
+
+    /**
+     * The number of classifiers only partly covering a region below which a
+     * compiled population stops splitting it, the maximum depth of its
+     * decision tree and the maximum number of leaves per classifier.
+     * 
+     * @see CompiledPopulation
+     */
+    final public static int compileLeafSize=4;
+    final public static int compileDepth=32;
+    final public static int compileLeaves=16;
     
     /**
      * The default constructor.
@@ -1,4 +1,10 @@
 import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This class manages the XCS-System. It stores the population, determines a
@@ -20,8 +26,19 @@ public class XCSManager implements Serializable {
 
 	public int maxPopSize;
 	public int cllSize;
+
+	/**
+	 * The settings and the random source of this learner.
+	 */
+	private XCSConfig config;
+
 	public boolean combCov;
-	private String input;
+	/**
+	 * The current state, kept for updating the action set, and a buffer for
+	 * parsing string input.
+	 */
+	private double[] state = new double[0];
+	private double[] parsed = new double[0];
 	private int actionWinner;
 	private int cycles = 0;
 	private int minExp;
@@ -35,6 +52,13 @@ public class XCSManager implements Serializable {
 	 */
 	private XClassifierSet actionSet = null;
 
+	/**
+	 * The two action sets formed in turns, so that a multi-step trial can
+	 * still update the previous one, and the turn.
+	 */
+	private XClassifierSet[] actionSets = new XClassifierSet[2];
+	private int actionSetTurn = 0;
+
 	/**
 	 * Writer to the specified log file.
 	 */
@@ -50,6 +74,43 @@ public class XCSManager implements Serializable {
 	 */
 	public int explorationCount = 0;
 
+	/**
+	 * Whether combining runs in the background on a snapshot of the
+	 * population instead of blocking the learning cycle.
+	 */
+	private boolean asyncCombining = false;
+
+	/**
+	 * The thread running background combining, created on first use.
+	 */
+	private transient ExecutorService combiner = null;
+
+	/**
+	 * The running background combining, its snapshot of the population and
+	 * the originals of the copied classifiers.
+	 */
+	private transient Future<?> combining = null;
+	private transient XClassifierSet combined = null;
+	private transient LinkedHashMap<XClassifier, XClassifier> originals = null;
+
+	/**
+	 * Spreads combining over the learning steps if set.
+	 */
+	private CombiningScheduler scheduler = null;
+
+	/**
+	 * The population last published for concurrent readers. It is replaced
+	 * as a whole and never changed, so readers need no lock.
+	 */
+	private transient volatile CompiledPopulation published = null;
+
+	/**
+	 * The learning steps between automatic publications, 0 for none, and the
+	 * steps since the last one.
+	 */
+	private int publishPeriod = 0;
+	private int publishCycles = 0;
+
 	/**
 	 * Constructor of the XCSManager with active logfile-mode.
 	 * 
@@ -61,12 +122,25 @@ public class XCSManager implements Serializable {
 	 *            Random seed
 	 */
 	public XCSManager(int numberOfActions, int maxPopSize, int Tcomb, boolean debugMode, File outFile, int seed) {
-		this.maxPopSize = maxPopSize;
-		XCSConstants.maxPopSize = maxPopSize;
-		this.Tcomb = Tcomb;
-		XCSConstants.Tcomb = Tcomb;
+		this(numberOfActions, newConfig(maxPopSize, Tcomb, seed), debugMode, outFile);
+	}
+
+	/**
+	 * Constructor of the XCSManager with the given configuration.
+	 * 
+	 * @param numberOfActions
+	 *            number of possible actions.
+	 * @param config
+	 *            The settings and random source of the learner, not to be
+	 *            shared with another learner.
+	 * @param outFile
+	 *            DebugFile
+	 */
+	public XCSManager(int numberOfActions, XCSConfig config, boolean debugMode, File outFile) {
+		this.config = config;
+		this.maxPopSize = config.maxPopSize;
+		this.Tcomb = config.Tcomb;
 		this.debugMode = debugMode;
-		XCSConstants.random.setSeed(seed);
 		this.minExp = (Tcomb>0)? XCSConstants.minExp:1;
 
 		// specify output file
@@ -77,7 +151,7 @@ public class XCSManager implements Serializable {
 				System.err.println("Error accesing file");
 			}
 
-		pop = new XClassifierSet(numberOfActions, maxPopSize);
+		pop = new XClassifierSet(numberOfActions, config);
 		this.numberOfActions = numberOfActions;
 
 	}
@@ -86,12 +160,22 @@ public class XCSManager implements Serializable {
 	 * Constructs the XCS system for a multi-step problem.
 	 */
 	public XCSManager(MazeEnvironment e, int maxPopSize, int Tcomb, boolean debugMode, File outFile, int seed) {
-		this.maxPopSize = maxPopSize;
-		this.Tcomb = Tcomb;
+		this(e, newConfig(maxPopSize, Tcomb, seed), debugMode, outFile);
+	}
+
+	/**
+	 * Constructs the XCS system for a multi-step problem with the given
+	 * configuration. The environment draws its start positions from the
+	 * random source of the learner.
+	 */
+	public XCSManager(MazeEnvironment e, XCSConfig config, boolean debugMode, File outFile) {
+		this.config = config;
+		this.maxPopSize = config.maxPopSize;
+		this.Tcomb = config.Tcomb;
 		this.debugMode = debugMode;
-		XCSConstants.random.setSeed(seed);
 		minExp = (Tcomb>0) ? XCSConstants.minExp:1;
 		env = e;
+		env.setRandom(config.random);
 
 		// specify output file
 		if (debugMode)
@@ -103,11 +187,29 @@ public class XCSManager implements Serializable {
 
 		// initialize XCS
 		this.numberOfActions = e.getNrActions();
-		pop = new XClassifierSet(this.numberOfActions, maxPopSize);
+		pop = new XClassifierSet(this.numberOfActions, config);
+	}
+
+	/**
+	 * Returns a default configuration with the given settings.
+	 */
+	private static XCSConfig newConfig(int maxPopSize, int Tcomb, int seed) {
+		XCSConfig config = new XCSConfig(seed);
+		config.maxPopSize = maxPopSize;
+		config.Tcomb = Tcomb;
+		return config;
+	}
+
+	/**
+	 * Returns the settings and random source of this learner. Set its
+	 * metrics to instrument the learner.
+	 */
+	public XCSConfig getConfig() {
+		return config;
 	}
 
 	/**
-	 * Initiate a match set.
+	 * Initiate a match set. The match set is reused by the next call.
 	 * 
 	 * @param state
 	 *            The current state of the environment.
@@ -118,11 +220,21 @@ public class XCSManager implements Serializable {
 	 * @return the match set.
 	 */
 	public XClassifierSet getMatchSet(double[] state, int steps, int exploreMode) {
+		XCSMetrics metrics = config.metrics;
+		boolean timed = metrics.isEnabled();
+		long start = timed ? System.nanoTime() : 0;
+
 		// create MatchSet
-		XClassifierSet dummySet = new XClassifierSet(state, pop, steps,
-				numberOfActions, maxPopSize, (exploreMode == 1));
+		if (matchSet == null)
+			matchSet = new XClassifierSet(state, pop, steps,
+					numberOfActions, maxPopSize, (exploreMode == 1));
+		else
+			matchSet.formMatchSet(state, pop, steps, numberOfActions,
+					maxPopSize, (exploreMode == 1));
 
-		return dummySet;
+		if (timed)
+			metrics.phase(XCSMetrics.MATCHING, System.nanoTime() - start);
+		return matchSet;
 	}
 
 	/**
@@ -136,7 +248,14 @@ public class XCSManager implements Serializable {
 	 * @return the selected action to be executed.
 	 */
 	public int getActionWinner(XClassifierSet dummySet, int exploreMode) {
-		predictionArray = new PredictionArray(dummySet, numberOfActions, minExp);
+		XCSMetrics metrics = config.metrics;
+		boolean timed = metrics.isEnabled();
+		long start = timed ? System.nanoTime() : 0;
+
+		if (predictionArray == null)
+			predictionArray = new PredictionArray(dummySet, numberOfActions, minExp, config.random);
+		else
+			predictionArray.update(dummySet, numberOfActions, minExp);
 		int dummyWinner = -1;
 
 		explorationCount += exploreMode;
@@ -148,11 +267,14 @@ public class XCSManager implements Serializable {
 			dummyWinner = predictionArray
 					.luckyBestActionWinner(numberOfActions);
 
+		if (timed)
+			metrics.phase(XCSMetrics.PREDICTION, System.nanoTime() - start);
 		return dummyWinner;
 	}
 
 	/**
-	 * Initiates an action set.
+	 * Initiates an action set. Two action sets are used in turns, so the
+	 * action set is reused by the call after the next one.
 	 * 
 	 * @param secondDummySet
 	 *            The match set.
@@ -161,7 +283,14 @@ public class XCSManager implements Serializable {
 	 * @return the action set.
 	 */
 	public XClassifierSet getActionSet(XClassifierSet secondDummySet, int dummyWinner) {
-		XClassifierSet dummySet = new XClassifierSet(secondDummySet, dummyWinner);
+		if (actionSets == null)
+			actionSets = new XClassifierSet[2];
+		actionSetTurn ^= 1;
+		XClassifierSet dummySet = actionSets[actionSetTurn];
+		if (dummySet == null)
+			dummySet = actionSets[actionSetTurn] = new XClassifierSet(secondDummySet, dummyWinner);
+		else
+			dummySet.formActionSet(secondDummySet, dummyWinner);
 		return dummySet;
 	}
 
@@ -174,15 +303,157 @@ public class XCSManager implements Serializable {
 	public void updateActionSet(double reward) {
 
 		// updating actionSet
-		this.actionSet.updateSet(0., getInput(), this.actionWinner, reward);
+		updateSet(this.actionSet, 0., this.state, this.actionWinner, reward);
 
-		if (Tcomb>0) {
+		if (Tcomb>0)
 			cycles++;
+		if (Tcomb>0 && scheduler != null)
+			stepScheduler();
+		else if (Tcomb>0) {
+			collectCombining(false);
 			if (cycles % Tcomb == 0 && this.pop.changed) {
 				//this.pop = sortSet(this.pop);
-				this.pop.combine(numberOfActions);				
+				combinePopulation();
 			}
 		}
+		countPublish();
+	}
+
+	/**
+	 * Updates the given action set, measuring the time if metrics are
+	 * enabled.
+	 */
+	private void updateSet(XClassifierSet set, double maxPrediction, double[] state, int action, double reward) {
+		XCSMetrics metrics = config.metrics;
+		boolean timed = metrics.isEnabled();
+		long start = timed ? System.nanoTime() : 0;
+		set.updateSet(maxPrediction, state, action, reward);
+		if (timed)
+			metrics.phase(XCSMetrics.UPDATE, System.nanoTime() - start);
+	}
+
+	/**
+	 * Does one step of scheduled combining, measuring the time if metrics
+	 * are enabled.
+	 */
+	private void stepScheduler() {
+		XCSMetrics metrics = config.metrics;
+		boolean timed = metrics.isEnabled();
+		long start = timed ? System.nanoTime() : 0;
+		scheduler.step(this.pop);
+		if (timed)
+			metrics.phase(XCSMetrics.COMBINING, System.nanoTime() - start);
+	}
+
+	/**
+	 * Sets whether combining runs in the background. In the background it
+	 * works on a snapshot of the population while learning continues; its
+	 * result is applied at the start of the first update after it finished.
+	 * A combining period falling due while the previous one still runs is
+	 * skipped. Results then depend on timing and are not reproducible.
+	 * 
+	 * @param async
+	 *            Set to true for background combining.
+	 */
+	public void setAsyncCombining(boolean async) {
+		if (!async)
+			collectCombining(true);
+		this.asyncCombining = async;
+	}
+
+	/**
+	 * Spreads combining over the learning steps: each step does at most the
+	 * given amount of combining work and the next step continues where it
+	 * stopped. In adaptive mode the cycles between combining rounds are
+	 * derived from the rate at which the population changes, starting from
+	 * Tcomb. Scheduled combining replaces periodic and background combining;
+	 * passing no budget and adaptive false switches back to periodic
+	 * combining.
+	 * 
+	 * @see CombiningScheduler
+	 * @param pairBudget
+	 *            The number of candidate pairs per step, 0 for no limit.
+	 * @param timeBudget
+	 *            The combining time per step in nanoseconds, 0 for no limit.
+	 * @param adaptive
+	 *            Set to true to derive the period from the rate of change.
+	 */
+	public void setCombiningSchedule(int pairBudget, long timeBudget, boolean adaptive) {
+		if (pairBudget <= 0 && timeBudget <= 0 && !adaptive) {
+			scheduler = null;
+			return;
+		}
+		collectCombining(true);
+		if (scheduler == null)
+			scheduler = new CombiningScheduler(numberOfActions, Tcomb);
+		scheduler.setBudget(Math.max(0, pairBudget), Math.max(0, timeBudget));
+		scheduler.setAdaptive(adaptive);
+	}
+
+	/**
+	 * Combines the population, or starts combining a snapshot of it in the
+	 * background.
+	 */
+	private void combinePopulation() {
+		if (!asyncCombining) {
+			this.pop.combine(numberOfActions);
+			return;
+		}
+		if (combining != null)
+			return;
+
+		if (combiner == null)
+			combiner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "XCS combining");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+		originals = new LinkedHashMap<XClassifier, XClassifier>();
+		final XClassifierSet snapshot = this.pop.snapshot(originals);
+		final int actions = numberOfActions;
+		this.pop.changed = false;
+		combined = snapshot;
+		combining = combiner.submit(new Runnable() {
+			public void run() {
+				snapshot.combine(actions);
+			}
+		});
+	}
+
+	/**
+	 * Applies the result of background combining to the population if it
+	 * has finished. If combining failed, the population gets its combining
+	 * marks back and the error is passed on.
+	 * 
+	 * @param wait
+	 *            Set to true to wait for a running combining to finish.
+	 * @throws RuntimeException
+	 *             if background combining failed or waiting for it was
+	 *             interrupted.
+	 */
+	public void collectCombining(boolean wait) {
+		if (combining == null || (!wait && !combining.isDone()))
+			return;
+		try {
+			combining.get();
+			this.pop.reconcile(combined, originals);
+		} catch (InterruptedException e) {
+			combining.cancel(true);
+			this.pop.restoreMarks(combined);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Background combining interrupted", e);
+		} catch (ExecutionException e) {
+			this.pop.restoreMarks(combined);
+			System.err.println("Error in background combining: " + e.getCause());
+			throw new RuntimeException(e.getCause());
+		} finally {
+			combining = null;
+			combined = null;
+			originals = null;
+		}
 	}
 
 	/**
@@ -199,6 +470,7 @@ public class XCSManager implements Serializable {
 	public int doOneMultiStep(double[] state, int exploreMode, int[] stepsToGoal,
 			double[] sysError, int trialCounter, int stepCounter) {
 		XClassifierSet prevActionSet = null;
+		double[] prevState = null;
 		double prevReward = 0., prevPrediction = 0.;
 		int steps;
 
@@ -206,6 +478,11 @@ public class XCSManager implements Serializable {
 			sysError[trialCounter % 50] = 0.;
 
 		for (steps = 0; steps < XCSConstants.teletransportation; steps++) {
+			countPublish();
+			if (Tcomb>0 && scheduler != null)
+				stepScheduler();
+			else if (Tcomb>0)
+				collectCombining(false);
 			this.matchSet = getMatchSet(state, stepCounter + steps
 					* exploreMode, exploreMode);
 			this.actionWinner = getActionWinner(this.matchSet, exploreMode);
@@ -215,7 +492,7 @@ public class XCSManager implements Serializable {
 
 			if (prevActionSet != null) {
 				prevActionSet.confirmClassifiersInSet();
-				prevActionSet.updateSet(predictionArray.getBestValue(), getInput(), this.actionWinner, prevReward);
+				updateSet(prevActionSet, predictionArray.getBestValue(), prevState, this.actionWinner, prevReward);
 				if (exploreMode == 0)
 					sysError[trialCounter % 50] += (double) Math .abs(XCSConstants.gamma
 						* predictionArray.getValue(actionWinner)
@@ -224,20 +501,21 @@ public class XCSManager implements Serializable {
 
 			if (env.doReset()) {
 				actionSet.confirmClassifiersInSet();
-				actionSet.updateSet(0., getInput(), this.actionWinner, reward);
+				updateSet(actionSet, 0., state, this.actionWinner, reward);
 				if (exploreMode == 0) {
 					sysError[trialCounter % 50] += (double) Math.abs(reward
 						- predictionArray.getValue(actionWinner)) / (double) env.getMaxPayoff();
 					steps++;
 				}
 
-				if (Tcomb>0)// && this.pop.changed)
+				if (Tcomb>0 && scheduler == null)// && this.pop.changed)
 					if ((2 * trialCounter + exploreMode + 1) % Tcomb == 0)
-						this.pop.combine(this.numberOfActions);
+						combinePopulation();
 				break;
 			}
 
 			prevActionSet = actionSet;
+			prevState = state;
 			if (exploreMode == 0)
 				prevPrediction = predictionArray.getValue(actionWinner);
 			prevReward = reward;
@@ -251,43 +529,263 @@ public class XCSManager implements Serializable {
 		return stepCounter + steps;
 	}
 	
-	private double[] getInput() {
-		String[] inputs = this.input.split(";");
-		int len = inputs.length;
-		double[] state = new double[len];
-		
-		for (int i=0; i<len; i++)
-			state[i] = Double.valueOf(inputs[i]);
-		
-		return state;
+	/**
+	 * Parses string input into the given buffer. A string of digits only is
+	 * read as one value per digit, anything else as values separated by ';',
+	 * where trailing separators are ignored.
+	 * 
+	 * @param input
+	 *            The input string.
+	 * @param buffer
+	 *            Receives the values.
+	 * @return the number of values, or -(number of values) - 1 if the buffer
+	 *         is too small to hold them.
+	 * @throws NumberFormatException
+	 *             if a value cannot be parsed.
+	 */
+	public static int parseInput(String input, double[] buffer) {
+		int len = input.length();
+		boolean digits = len > 0;
+		for (int i=0; i<len && digits; i++)
+			digits = Character.isDigit(input.charAt(i));
+
+		if (digits) {
+			if (len > buffer.length)
+				return -len - 1;
+			for (int i=0; i<len; i++)
+				buffer[i] = input.charAt(i) - '0';
+			return len;
+		}
+
+		// as with String.split, empty values at the end are dropped
+		int end = len;
+		while (end > 0 && input.charAt(end - 1) == ';')
+			end--;
+		if (end == 0 && len > 0)
+			return 0;
+
+		int values = 0;
+		for (int from=0; from<=end; values++) {
+			int to = input.indexOf(';', from);
+			if (to < 0 || to > end)
+				to = end;
+			if (values < buffer.length)
+				buffer[values] = parseValue(input, from, to);
+			from = to + 1;
+		}
+		return (values <= buffer.length) ? values : -values - 1;
+	}
+
+	/**
+	 * Parses the decimal number between the given positions of the string.
+	 * Plain decimals of up to 15 digits are converted directly, which gives
+	 * the same result as Double.parseDouble, anything else is passed on to
+	 * it.
+	 */
+	private static double parseValue(String input, int from, int to) {
+		while (from < to && input.charAt(from) <= ' ')
+			from++;
+		while (to > from && input.charAt(to - 1) <= ' ')
+			to--;
+		boolean negative = from < to && input.charAt(from) == '-';
+		int i = negative ? from + 1 : from;
+		long mantissa = 0;
+		int digits = 0, decimals = -1;
+		for (; i<to; i++) {
+			char c = input.charAt(i);
+			if (c >= '0' && c <= '9') {
+				mantissa = 10 * mantissa + (c - '0');
+				digits++;
+				if (decimals >= 0)
+					decimals++;
+			} else if (c == '.' && decimals < 0)
+				decimals = 0;
+			else
+				break;
+		}
+		if (i < to || digits == 0 || digits > 15)
+			return Double.parseDouble(input.substring(from, to));
+		double value = (decimals > 0) ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+		return negative ? -value : value;
 	}
 
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15 };
+
 	/**
 	 * Executes one explore or exploit loop for a single step problem.
 	 * 
-	 * @param state
+	 * @see #nextAction(double[], boolean)
+	 * @see #parseInput
+	 * @param originalInput
 	 *            coded current situation
 	 * @param exploreMode
 	 *            integer '1' if explore mode
 	 * @return action for the next period
 	 */
 	public int nextAction(String originalInput, int exploreMode) {
-		input = "";
-		
-		if (originalInput.matches("[0-9]+")) {
-			int len = originalInput.length();
-			
-			for (int i=0; i<len; i++) {
-				input += originalInput.charAt(i);
-				if (i<len - 1) input += ";";
-			}
+		int len = parseInput(originalInput, parsed);
+		if (len < 0) {
+			parsed = new double[-len - 1];
+			len = parseInput(originalInput, parsed);
+		}
+		if (len != state.length)
+			state = new double[len];
+		System.arraycopy(parsed, 0, state, 0, len);
+
+		return selectAction(exploreMode);
+	}
+
+	/**
+	 * Executes one explore or exploit loop for a single step problem. The
+	 * state is copied, so the caller may reuse its array.
+	 * 
+	 * @param situation
+	 *            The current situation.
+	 * @param explore
+	 *            Set to true for exploration.
+	 * @return action for the next period
+	 */
+	public int nextAction(double[] situation, boolean explore) {
+		if (situation.length != state.length)
+			state = new double[situation.length];
+		System.arraycopy(situation, 0, state, 0, situation.length);
+
+		return selectAction(explore ? 1 : 0);
+	}
+
+	/**
+	 * Updates the action set of the last action with the received reward.
+	 * 
+	 * @param reward
+	 *            Received reward for the last action.
+	 */
+	public void update(double reward) {
+		if (this.actionSet != null)
+			updateActionSet(reward);
+	}
+
+	/**
+	 * Computes the prediction arrays and best actions of a batch of states
+	 * against the current population, as exploitation would see them but
+	 * without covering and without changing the learner. The population is
+	 * scanned once for the whole batch.
+	 * 
+	 * @param states
+	 *            The states, one per row.
+	 * @return the prediction arrays and best actions of the states.
+	 */
+	public PredictionBatch predictBatch(double[][] states) {
+		PredictionBatch batch = new PredictionBatch(states.length, numberOfActions);
+		int length = (states.length > 0) ? states[0].length : 0;
+		boolean uniform = true;
+		for (int s = 1; s < states.length && uniform; s++)
+			uniform = states[s].length == length;
+
+		if (uniform) {
+			double[] flat = new double[states.length * length];
+			for (int s = 0; s < states.length; s++)
+				System.arraycopy(states[s], 0, flat, s * length, length);
+			pop.sumPredictions(flat, length, batch, 0, states.length);
 		} else
-		if (originalInput.matches("[0-9, /., /;]+")) {
-			input = originalInput;
+			for (int s = 0; s < states.length; s++)
+				pop.sumPredictions(states[s], states[s].length, batch, s, 1);
+		batch.finish();
+		return batch;
+	}
+
+	/**
+	 * Computes the prediction arrays and best actions of a batch of states
+	 * given one after another in a single array.
+	 * 
+	 * @see #predictBatch(double[][])
+	 * @param states
+	 *            The states, stateLength values each.
+	 * @param stateLength
+	 *            The length of one state.
+	 * @return the prediction arrays and best actions of the states.
+	 */
+	public PredictionBatch predictBatch(double[] states, int stateLength) {
+		int count = (stateLength > 0) ? states.length / stateLength : 0;
+		PredictionBatch batch = new PredictionBatch(count, numberOfActions);
+		pop.sumPredictions(states, stateLength, batch, 0, count);
+		batch.finish();
+		return batch;
+	}
+
+	/**
+	 * Compiles the current population into an immutable decision tree for
+	 * fast exploitation, e.g. once learning has converged. Later learning
+	 * does not change the returned model.
+	 * 
+	 * @return the compiled population.
+	 */
+	public CompiledPopulation compile() {
+		return new CompiledPopulation(pop, numberOfActions);
+	}
+
+	/**
+	 * Publishes a frozen copy of the current population for exploit queries
+	 * from other threads. Must be called by the learning thread; readers keep
+	 * using the previous copy until the new one is complete.
+	 * 
+	 * @see #exploit(double[])
+	 */
+	public void publish() {
+		published = new CompiledPopulation(pop, numberOfActions);
+	}
+
+	/**
+	 * Sets the number of learning steps after which the population is
+	 * published again, 0 to publish only by calling publish().
+	 * 
+	 * @param period
+	 *            The steps between publications.
+	 */
+	public void setPublishPeriod(int period) {
+		this.publishPeriod = Math.max(0, period);
+		this.publishCycles = 0;
+	}
+
+	/**
+	 * Counts a learning step and publishes the population when the period
+	 * is over.
+	 */
+	private void countPublish() {
+		if (publishPeriod > 0 && ++publishCycles >= publishPeriod) {
+			publishCycles = 0;
+			publish();
 		}
-			
-		double[] state = getInput();
-		
+	}
+
+	/**
+	 * Returns the last published population, or null if none was published.
+	 * Safe to call from any thread.
+	 */
+	public CompiledPopulation getPublished() {
+		return published;
+	}
+
+	/**
+	 * Returns the best action for the state according to the last published
+	 * population, or -1 if none was published or no classifier matches.
+	 * Safe to call from any thread while learning goes on; it neither blocks
+	 * nor changes the learner.
+	 * 
+	 * @param situation
+	 *            The current situation.
+	 * @return the action with the highest prediction.
+	 */
+	public int exploit(double[] situation) {
+		CompiledPopulation snapshot = published;
+		return (snapshot == null) ? -1 : snapshot.getAction(situation);
+	}
+
+	/**
+	 * Forms match set, prediction array and action set for the current
+	 * state.
+	 */
+	private int selectAction(int exploreMode) {
 		this.matchSet = getMatchSet(state, explorationCount, exploreMode);
 		this.actionWinner = getActionWinner(this.matchSet, exploreMode);
 		this.actionSet = getActionSet(this.matchSet, this.actionWinner);
@@ -313,6 +811,14 @@ public class XCSManager implements Serializable {
 		return this.pop.getSize();
 	}
 
+	/**
+	 * Returns the number of classifiers removed for their prediction error
+	 * since the population was created.
+	 */
+	public int getDeletionCount() {
+		return this.pop.getDeletionCount();
+	}
+
 	/**
 	 * Run one learning cycle, starting from updating the action set.
 	 * 
@@ -337,10 +843,63 @@ public class XCSManager implements Serializable {
 	 * Sets the population to empty.
 	 */
 	public void emptyRuleBase() {
-		this.pop = null;
-		this.pop = new XClassifierSet(numberOfActions, maxPopSize);
+		replacePopulation(new XClassifierSet(numberOfActions, config));
+	}
+
+	/**
+	 * Writes the population and the learning counters to a checkpoint file.
+	 * A running background combining is finished first. The settings and the
+	 * random source are not saved.
+	 * 
+	 * @see PopulationCheckpoint
+	 * @param file
+	 *            The checkpoint file, replaced if it exists.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public void saveCheckpoint(File file) throws IOException {
+		collectCombining(true);
+		new PopulationCheckpoint(pop, numberOfActions, cycles, explorationCount).write(file);
+	}
+
+	/**
+	 * Replaces the population and the learning counters by those of a
+	 * checkpoint file. The learner keeps its settings and random source.
+	 * 
+	 * @see PopulationCheckpoint
+	 * @param file
+	 *            The checkpoint file.
+	 * @throws IOException
+	 *             if the file cannot be read, is corrupt or was written by a
+	 *             learner with a different number of actions. The learner is
+	 *             unchanged then.
+	 */
+	public void loadCheckpoint(File file) throws IOException {
+		PopulationCheckpoint checkpoint = PopulationCheckpoint.read(file, numberOfActions, config);
+		replacePopulation(checkpoint.population);
+		cycles = checkpoint.cycles;
+		explorationCount = checkpoint.explorationCount;
+	}
+
+	/**
+	 * Replaces the population, dropping a running background combining and
+	 * the current sets. The replaced population gets the combining marks
+	 * back that it handed over to the dropped combining.
+	 */
+	private void replacePopulation(XClassifierSet population) {
+		if (combining != null) {
+			combining.cancel(true);
+			this.pop.restoreMarks(combined);
+		}
+		combining = null;
+		combined = null;
+		originals = null;
+		this.pop = population;
 		this.matchSet = null;
 		this.actionSet = null;
+		this.actionSets = new XClassifierSet[2];
+		if (published != null)
+			publish();
 	}
 
 	/**
@@ -449,6 +1008,7 @@ public class XCSManager implements Serializable {
 					j--;
 				}
 
+		theSet.reindex();
 		return theSet;
 
 	}
@@ -0,0 +1,127 @@
+/**
+ * This interface receives the latencies of the learning phases and the counts
+ * of the structural events of a learner. A learner reports to the metrics of
+ * its XCSConfig; the default NONE discards everything, and the learner does
+ * not even read the clock while the metrics are disabled.
+ *
+ * Combining may run on other threads than the learner, so implementations
+ * have to be thread-safe.
+ *
+ * @author Nugroho Fredivianus
+ * @version XCS-RC 2.0
+ * @see JmxMetrics
+ */
+public interface XCSMetrics {
+	/**
+	 * Forming the match set, including the covering and deletion it causes.
+	 */
+	int MATCHING = 0;
+
+	/**
+	 * Creating classifiers for the actions missing in the match set.
+	 */
+	int COVERING = 1;
+
+	/**
+	 * Deleting micro-classifiers to keep the population size.
+	 */
+	int DELETION = 2;
+
+	/**
+	 * Building the prediction array and selecting the action.
+	 */
+	int PREDICTION = 3;
+
+	/**
+	 * Updating the action set.
+	 */
+	int UPDATE = 4;
+
+	/**
+	 * Combining the population, or one slice of scheduled combining.
+	 */
+	int COMBINING = 5;
+
+	/**
+	 * The names of the phases, indexed by the phase constants.
+	 */
+	String[] PHASES = { "matching", "covering", "deletion", "prediction", "update", "combining" };
+
+	/**
+	 * Classifiers created by covering when forming a match set.
+	 */
+	int COVERINGS = 0;
+
+	/**
+	 * Micro-classifiers deleted to keep the population size.
+	 */
+	int DELETIONS = 1;
+
+	/**
+	 * Classifiers removed for their prediction error, each replaced by one
+	 * covering the current state that is not counted separately.
+	 */
+	int REMOVALS = 2;
+
+	/**
+	 * Classifiers created by combining.
+	 */
+	int COMBINES = 3;
+
+	/**
+	 * Combining candidates rejected because an overlapping classifier
+	 * disproved them.
+	 */
+	int DISPROVALS = 4;
+
+	/**
+	 * Classifiers removed as outliers for their disproval rate.
+	 */
+	int OUTLIERS = 5;
+
+	/**
+	 * The names of the events, indexed by the event constants.
+	 */
+	String[] EVENTS = { "coverings", "deletions", "removals", "combines", "disprovals", "outliers" };
+
+	/**
+	 * The metrics discarding everything.
+	 */
+	XCSMetrics NONE = new XCSMetrics() {
+		public boolean isEnabled() {
+			return false;
+		}
+
+		public void phase(int phase, long nanos) {
+		}
+
+		public void count(int event, int n) {
+		}
+	};
+
+	/**
+	 * Returns if the latencies of the phases are measured.
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Records the latency of one run of the given phase. Only called if
+	 * isEnabled() returns true.
+	 * 
+	 * @param phase
+	 *            One of the phase constants.
+	 * @param nanos
+	 *            The duration in nanoseconds.
+	 */
+	void phase(int phase, long nanos);
+
+	/**
+	 * Counts events.
+	 * 
+	 * @param event
+	 *            One of the event constants.
+	 * @param n
+	 *            The number of events.
+	 */
+	void count(int event, int n);
+}
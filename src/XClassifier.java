@@ -1,6 +1,8 @@
 import java.io.Serializable;
 import java.io.PrintWriter;
 import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Each instance of this class represents one classifier. The class provides
@@ -28,7 +30,11 @@ public class XClassifier implements Serializable {
 	private int action;
 
 	/**
-	 * The reward prediction value of this classifier.
+	 * The reward prediction value of this classifier. Like the other
+	 * statistics below, the field only holds the value while the classifier
+	 * is not part of a population; a population keeps the statistics of its
+	 * members in its own parallel arrays, and the classifier reads and writes
+	 * its row there.
 	 */
 	private double prediction;
 
@@ -64,6 +70,49 @@ public class XClassifier implements Serializable {
 	 */
 	private double[] elements;
 
+	/**
+	 * The bit-packed form of the elements if they are binary, null otherwise.
+	 * 
+	 * @see BinaryCondition
+	 */
+	private long[] bits;
+
+	/**
+	 * The population this classifier belongs to, which keeps sums over the
+	 * numerosity, fitness and prediction of its members. Null while the
+	 * classifier is not part of a population.
+	 */
+	private XClassifierSet population;
+
+	/**
+	 * The position of the classifier in the array of its population, kept up
+	 * to date by the population so that it can remove the classifier in
+	 * constant time. -1 while the classifier is not part of a population.
+	 */
+	private int handle = -1;
+
+	/**
+	 * The positions of the classifier in the bins of the interval index of
+	 * its population, one per bin its condition touches, maintained by the
+	 * index. Null while the classifier is not indexed.
+	 */
+	int[] indexSlots;
+
+	/**
+	 * The position of the classifier among the members of its action in its
+	 * population, -1 while the classifier is not part of a population.
+	 */
+	private int actionHandle = -1;
+
+	/**
+	 * Whether the classifier changed in a way that matters for combining
+	 * since its niche was combined last: it is new, its experience reached
+	 * minExp or its prediction moved by more than predTol from
+	 * combPrediction, the prediction it had back then.
+	 */
+	private boolean dirty = true;
+	private double combPrediction;
+
 	/**
 	 * The number of disproving given to a candidate classifier in a combinig process.
 	 */
@@ -101,6 +150,7 @@ public class XClassifier implements Serializable {
 	 */
 	public XClassifier(double[] state, int act) {
 		elements=state;
+		bits = BinaryCondition.pack(elements);
 		action = act;
 		classifierSetVariables(1, 0);
 	}
@@ -112,6 +162,7 @@ public class XClassifier implements Serializable {
 	public XClassifier(double[] cond, int act, double pred, double predErr,
 			double fit, int nums, int exp, int actSetSize) {
 		elements = cond;
+		bits = BinaryCondition.pack(elements);
 		action = act;
 		prediction = pred;
 		predictionError = predErr;
@@ -133,11 +184,13 @@ public class XClassifier implements Serializable {
 	 *            set to the number of actions possible in the problem).
 	 * @param situation
 	 *            The current problem instance/perception.
+	 * @param random
+	 *            The random source of the learner.
 	 */
 	public XClassifier(double setSize, int time, int numberOfActions,
-			double[] state) {
+			double[] state, Random random) {
 		createMatchingElements(state);
-		createRandomAction(numberOfActions);
+		createRandomAction(numberOfActions, random);
 		classifierSetVariables(setSize, time);
 	}
 
@@ -152,11 +205,13 @@ public class XClassifier implements Serializable {
 	 *            The length of the elements of the new classifier.
 	 * @param numberOfActions
 	 *            The number of different actions to chose from
+	 * @param random
+	 *            The random source of the learner.
 	 */
 	public XClassifier(double setSize, int time, int condElements,
-			int numberOfActions) {
-		createRandomelements(condElements);
-		createRandomAction(numberOfActions);
+			int numberOfActions, Random random) {
+		createRandomelements(condElements, random);
+		createRandomAction(numberOfActions, random);
 		classifierSetVariables(setSize, time);
 	}
 
@@ -170,37 +225,118 @@ public class XClassifier implements Serializable {
 	 */
 	public XClassifier(XClassifier clOld) {
 		this.elements = clOld.elements;
+		this.bits = clOld.bits;
 		this.action = clOld.action;
-		this.prediction = clOld.prediction;
-		this.predictionError = clOld.predictionError;
+		this.prediction = clOld.getPrediction();
+		this.predictionError = clOld.getPredictionError();
 		// Here we should divide the fitness by the numerosity to get a accurate
 		// value for the new one!
-		this.fitness = clOld.fitness / clOld.numerosity;
+		this.fitness = clOld.getFitness() / clOld.getNumerosity();
 		this.numerosity = 1;
 		this.experience = 0;
-		this.actionSetSize = clOld.actionSetSize;
+		this.actionSetSize = clOld.getActionSetSize();
+	}
+
+	/**
+	 * Returns an exact copy of the classifier with all its parameters. The
+	 * copy does not belong to a population.
+	 */
+	public XClassifier duplicate() {
+		XClassifier cl = new XClassifier(elements.clone(), action, getPrediction(),
+				getPredictionError(), getFitness(), getNumerosity(), getExperience(), 0);
+		cl.actionSetSize = getActionSetSize();
+		cl.disproving = disproving;
+		cl.dirty = dirty;
+		cl.combPrediction = combPrediction;
+		return cl;
+	}
+
+	/**
+	 * Restores the parameters a checkpoint saves besides those of the
+	 * constructor. Must be called before the classifier is added to a
+	 * population.
+	 * 
+	 * @see PopulationCheckpoint
+	 */
+	void restore(double actionSetSize, int disproving, boolean dirty, double combPrediction) {
+		this.actionSetSize = actionSetSize;
+		this.disproving = disproving;
+		this.dirty = dirty;
+		this.combPrediction = combPrediction;
+	}
+
+	/**
+	 * Returns the prediction the classifier had when its niche was combined
+	 * last.
+	 */
+	double getCombPrediction() {
+		return combPrediction;
+	}
+
+	/**
+	 * Returns if the classifier changed since its niche was combined last.
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Marks the classifier as dirty and its niche in the population as
+	 * needing combining.
+	 */
+	void markDirty() {
+		if (!dirty) {
+			dirty = true;
+			if (population != null)
+				population.markNiche(action, false);
+		}
+	}
+
+	/**
+	 * Marks the classifier as combined with its current prediction.
+	 */
+	void setClean() {
+		dirty = false;
+		combPrediction = getPrediction();
+	}
+
+	/**
+	 * Marks the classifier dirty if its prediction drifted by more than
+	 * predTol since it was combined.
+	 */
+	private void checkDrift() {
+		if (Math.abs(getPrediction() - combPrediction) > XCSConstants.predTol)
+			markDirty();
 	}
 
 	/**
 	 * Resets a classifier to the initial values.
 	 */
 	public void reset() {
-		this.prediction = XCSConstants.predictionIni;
-		this.predictionError = XCSConstants.predictionErrorIni;
-		this.fitness = XCSConstants.fitnessIni;
-		this.numerosity = 1;
-		this.experience = 0;
-		this.actionSetSize = 0;
+		int oldNum = getNumerosity();
+		double oldFit = getFitness(), oldPred = getPrediction();
+		storePrediction(XCSConstants.predictionIni);
+		storePredictionError(XCSConstants.predictionErrorIni);
+		storeFitness(XCSConstants.fitnessIni);
+		storeNumerosity(1);
+		storeExperience(0);
+		storeActionSetSize(0);
+		if (population != null) {
+			population.updateSums(1 - oldNum, XCSConstants.fitnessIni - oldFit,
+					XCSConstants.predictionIni - oldPred * oldNum);
+			population.updateVote(this);
+		}
+		markDirty();
 	}
 
 	/**
 	 * Creates a elements randomly:
 	 */
-	private void createRandomelements(int numElements) {
+	private void createRandomelements(int numElements, Random random) {
 		elements = new double[2 * numElements];
 		for (int i = 0; i < numElements; i++) {
-			double value1 = XCSConstants.random.nextDouble();
-			double value2 = XCSConstants.random.nextDouble();
+			double value1 = random.nextDouble();
+			double value2 = random.nextDouble();
 			if (value1<value2) {
 				elements[2*i] = value1;					
 				elements[2*i+1] = value2;					
@@ -209,6 +345,7 @@ public class XClassifier implements Serializable {
 				elements[2*i+1] = value1;										
 			}				
 		}
+		bits = BinaryCondition.pack(elements);
 	}
 
 	/**
@@ -235,6 +372,7 @@ public class XClassifier implements Serializable {
 			//}
 		}
 		elements = dummyCond;
+		bits = BinaryCondition.pack(elements);
 	}
 
 	/**
@@ -242,9 +380,11 @@ public class XClassifier implements Serializable {
 	 * 
 	 * @param numberOfActions
 	 *            The number of actions to chose from.
+	 * @param random
+	 *            The random source of the learner.
 	 */
-	private void createRandomAction(int numberOfActions) {
-		action = (int) (XCSConstants.random.nextDouble() * numberOfActions);
+	private void createRandomAction(int numberOfActions, Random random) {
+		action = (int) (random.nextDouble() * numberOfActions);
 	}
 
 	/**
@@ -285,6 +425,26 @@ public class XClassifier implements Serializable {
 		return true;
 	}
 
+	/**
+	 * Returns if the classifier matches the given bit-packed binary state.
+	 * Non-binary classifiers never match a packed state.
+	 * 
+	 * @see BinaryCondition#packState(double[], long[])
+	 */
+	public boolean match(long[] stateBits) {
+		return bits != null && bits.length == 2 * stateBits.length
+				&& BinaryCondition.matches(bits, stateBits);
+	}
+
+	/**
+	 * Check the possibility of an environmental state matched by the elements
+	 * and the given bit-packed condition.
+	 */
+	public boolean condOverlap(long[] otherBits) {
+		return bits != null && bits.length == otherBits.length
+				&& BinaryCondition.overlaps(bits, otherBits);
+	}
+
 	/**
 	 * Check the possibility of an environmental state matched by the elements
 	 * and the given state.
@@ -443,7 +603,7 @@ public class XClassifier implements Serializable {
 	 *            The classifier to be compared.
 	 */
 	public boolean equals(XClassifier cl) {
-		if (cl.elements.equals(elements)) {
+		if (Arrays.equals(cl.elements, elements)) {
 			boolean identicAction = true;
 			identicAction = identicAction && (action == cl.action);
 			if (identicAction)
@@ -476,8 +636,8 @@ public class XClassifier implements Serializable {
 	 * @see XCSConstants#epsilon_0
 	 */
 	public boolean isSubsumer() {
-		if (experience > XCSConstants.theta_sub
-				&& predictionError < (double) XCSConstants.epsilon_0)
+		if (getExperience() > XCSConstants.theta_sub
+				&& getPredictionError() < (double) XCSConstants.epsilon_0)
 			return true;
 		return false;
 	}
@@ -493,6 +653,8 @@ public class XClassifier implements Serializable {
 	public boolean isMoreGeneral(XClassifier cl) {
 		if (elements.length != cl.elements.length)
 			return false;
+		if (bits != null && cl.bits != null)
+			return BinaryCondition.contains(bits, cl.bits);
 		for (int i=0; i<elements.length/2; i++) {
 			if (cl.elements[2*i] < elements[2*i] || cl.elements[2*i+1] > elements[2*i+1])
 				return false;
@@ -517,6 +679,15 @@ public class XClassifier implements Serializable {
 		return true;
 	}
 
+	/**
+	 * Check whether the classifier is subsumable to the given bit-packed
+	 * elements.
+	 */
+	public boolean isSubsumableTo(long[] otherBits) {
+		return bits != null && bits.length == otherBits.length
+				&& BinaryCondition.contains(otherBits, bits);
+	}
+
 	/**
 	 * Returns the vote for deletion of the classifier.
 	 * 
@@ -526,6 +697,8 @@ public class XClassifier implements Serializable {
 	 *            The mean fitness in the population.
 	 */
 	public double getDelProp(double meanFitness) {
+		double fitness = getFitness(), actionSetSize = getActionSetSize();
+		int numerosity = getNumerosity(), experience = getExperience();
 		if (fitness / numerosity >= XCSConstants.delta * meanFitness
 				|| experience < XCSConstants.theta_del)
 			return actionSetSize * numerosity;
@@ -542,12 +715,18 @@ public class XClassifier implements Serializable {
 	 *            reward in the following situation).
 	 */
 	public double updatePrediction(double P) {
+		double oldPred = getPrediction(), prediction = oldPred;
+		int experience = getExperience(), numerosity = getNumerosity();
 		if ((double) experience < 1. / XCSConstants.beta) {
 			prediction = (prediction * ((double) experience - 1.) + P)
 					/ (double) experience;
 		} else {
 			prediction += XCSConstants.beta * (P - prediction);
 		}
+		storePrediction(prediction);
+		if (population != null)
+			population.updateSums(0, 0., (prediction - oldPred) * numerosity);
+		checkDrift();
 		return prediction * numerosity;
 	}
 
@@ -560,6 +739,8 @@ public class XClassifier implements Serializable {
 	 *            reward in the following situation).
 	 */
 	public double updatePreError(double P) {
+		double prediction = getPrediction(), predictionError = getPredictionError();
+		int experience = getExperience();
 		if ((double) experience < 1. / XCSConstants.beta) {
 			predictionError = (predictionError * ((double) experience - 1.) + Math
 					.abs(P - prediction))
@@ -568,7 +749,8 @@ public class XClassifier implements Serializable {
 			predictionError += XCSConstants.beta
 					* (Math.abs(P - prediction) - predictionError);
 		}
-		return predictionError * numerosity;
+		storePredictionError(predictionError);
+		return predictionError * getNumerosity();
 	}
 
 	/**
@@ -583,6 +765,7 @@ public class XClassifier implements Serializable {
 	public double getAccuracy() {
 		double accuracy;
 
+		double predictionError = getPredictionError();
 		if (predictionError <= (double) XCSConstants.epsilon_0) {
 			accuracy = 1.;
 		} else {
@@ -603,8 +786,15 @@ public class XClassifier implements Serializable {
 	 *            The accuracy of the classifier.
 	 */
 	public double updateFitness(double accSum, double accuracy) {
-		fitness += XCSConstants.beta
-				* ((accuracy * numerosity) / accSum - fitness);
+		double fitness = getFitness();
+		double change = XCSConstants.beta
+				* ((accuracy * getNumerosity()) / accSum - fitness);
+		fitness += change;
+		storeFitness(fitness);
+		if (population != null) {
+			population.updateSums(0, change, 0.);
+			population.updateVote(this);
+		}
 		return fitness;
 	}
 
@@ -616,6 +806,8 @@ public class XClassifier implements Serializable {
 	 *            The number of micro-classifiers in the population
 	 */
 	public double updateActionSetSize(double numerositySum) {
+		double actionSetSize = getActionSetSize();
+		int experience = getExperience();
 		if (experience < 1. / XCSConstants.beta) {
 			actionSetSize = (actionSetSize * (double) (experience - 1) + numerositySum)
 					/ (double) experience;
@@ -623,7 +815,10 @@ public class XClassifier implements Serializable {
 			actionSetSize += XCSConstants.beta
 					* (numerositySum - actionSetSize);
 		}
-		return actionSetSize * numerosity;
+		storeActionSetSize(actionSetSize);
+		if (population != null)
+			population.updateVote(this);
+		return actionSetSize * getNumerosity();
 	}
 
 	/**
@@ -653,10 +848,28 @@ public class XClassifier implements Serializable {
 	}
 
 	/**
-	 * Change the elements of the classifier.
+	 * Change the elements of the classifier. Only for classifiers outside a
+	 * population, whose packed rows, index and action partition would
+	 * otherwise no longer match the classifier.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the classifier is a member of a population.
 	 */
 	public void setElements(double[] newCond) {
+		if (population != null)
+			throw new IllegalStateException("Cannot change the condition of the classifier "
+					+ stringCondition() + ":" + action + " in a population.");
 		elements = newCond;
+		bits = BinaryCondition.pack(elements);
+		markDirty();
+	}
+
+	/**
+	 * Returns the bit-packed elements of the classifier, or null if the
+	 * elements are not binary.
+	 */
+	public long[] getBits() {
+		return bits;
 	}
 
 	/**
@@ -667,35 +880,53 @@ public class XClassifier implements Serializable {
 	}
 
 	/**
-	 * Change the elements of the classifier.
+	 * Change the action of the classifier. Only for classifiers outside a
+	 * population, as with setElements().
+	 * 
+	 * @throws IllegalStateException
+	 *             if the classifier is a member of a population.
 	 */
 	public void setAction(int newAct) {
+		if (population != null)
+			throw new IllegalStateException("Cannot change the action of the classifier "
+					+ stringCondition() + ":" + action + " in a population.");
 		action = newAct;
+		markDirty();
 	}
 
 	/**
 	 * Returns the experience of the classifier.
 	 */
 	public int getExperience() {
-		return experience;
+		return (population == null) ? experience : population.experiences[handle];
 	}
 
 	public void setExperience(int exp) {
-		experience = exp;
+		boolean reached = getExperience() < XCSConstants.minExp && exp >= XCSConstants.minExp;
+		storeExperience(exp);
+		if (population != null)
+			population.updateVote(this);
+		if (reached)
+			markDirty();
 	}
 
 	/**
 	 * Increases the Experience of the classifier by one.
 	 */
 	public void increaseExperience() {
-		experience++;
+		int experience = getExperience() + 1;
+		storeExperience(experience);
+		if (population != null)
+			population.updateVote(this);
+		if (experience == XCSConstants.minExp)
+			markDirty();
 	}
 
 	/**
 	 * Returns the prediction of the classifier.
 	 */
 	public double getPrediction() {
-		return prediction;
+		return (population == null) ? prediction : population.predictions[handle];
 	}
 
 	/**
@@ -705,14 +936,17 @@ public class XClassifier implements Serializable {
 	 *            The new prediction of the classifier.
 	 */
 	public void setPrediction(double pre) {
-		prediction = pre;
+		if (population != null)
+			population.updateSums(0, 0., (pre - getPrediction()) * getNumerosity());
+		storePrediction(pre);
+		checkDrift();
 	}
 
 	/**
 	 * Returns the prediction error of the classifier.
 	 */
 	public double getPredictionError() {
-		return predictionError;
+		return (population == null) ? predictionError : population.predictionErrors[handle];
 	}
 
 	/**
@@ -722,14 +956,14 @@ public class XClassifier implements Serializable {
 	 *            The new prediction error of the classifier.
 	 */
 	public void setPredictionError(double predErr) {
-		predictionError = predErr;
+		storePredictionError(predErr);
 	}
 
 	/**
 	 * Returns the fitness of the classifier.
 	 */
 	public double getFitness() {
-		return fitness;
+		return (population == null) ? fitness : population.fitnesses[handle];
 	}
 
 	/**
@@ -739,14 +973,19 @@ public class XClassifier implements Serializable {
 	 *            The new fitness of the classifier.
 	 */
 	public void setFitness(double fit) {
-		fitness = fit;
+		double oldFit = getFitness();
+		storeFitness(fit);
+		if (population != null) {
+			population.updateSums(0, fit - oldFit, 0.);
+			population.updateVote(this);
+		}
 	}
 
 	/**
 	 * Returns the numerosity of the classifier.
 	 */
 	public int getNumerosity() {
-		return numerosity;
+		return (population == null) ? numerosity : population.numerosities[handle];
 	}
 
 	/**
@@ -756,18 +995,141 @@ public class XClassifier implements Serializable {
 	 *            The added numerosity (can be negative!).
 	 */
 	public void addNumerosity(int num) {
-		numerosity += num;
+		storeNumerosity(getNumerosity() + num);
+		if (population != null) {
+			population.updateSums(num, 0., getPrediction() * num);
+			population.updateVote(this);
+		}
 	}
 
 	/**
 	 * Returns the action set size of the classifier.
 	 */
 	public double getActionSetSize() {
-		return actionSetSize;
+		return (population == null) ? actionSetSize : population.actionSetSizes[handle];
+	}
+
+	/*
+	 * The statistics are written to the row of the population while the
+	 * classifier belongs to one, and to the fields otherwise.
+	 */
+
+	private void storePrediction(double value) {
+		if (population == null)
+			prediction = value;
+		else
+			population.predictions[handle] = value;
+	}
+
+	private void storePredictionError(double value) {
+		if (population == null)
+			predictionError = value;
+		else
+			population.predictionErrors[handle] = value;
+	}
+
+	private void storeFitness(double value) {
+		if (population == null)
+			fitness = value;
+		else
+			population.fitnesses[handle] = value;
+	}
+
+	private void storeNumerosity(int value) {
+		if (population == null)
+			numerosity = value;
+		else
+			population.numerosities[handle] = value;
+	}
+
+	private void storeExperience(int value) {
+		if (population == null)
+			experience = value;
+		else
+			population.experiences[handle] = value;
+	}
+
+	private void storeActionSetSize(double value) {
+		if (population == null)
+			actionSetSize = value;
+		else
+			population.actionSetSizes[handle] = value;
+	}
+
+	/**
+	 * Returns the population the classifier belongs to, null if none.
+	 */
+	public XClassifierSet getPopulation() {
+		return population;
+	}
+
+	/**
+	 * Moves the statistics of the classifier into the row at the given
+	 * position of the population it now belongs to. Only called by the
+	 * population itself when the classifier is added.
+	 */
+	void attach(XClassifierSet pop, int pos) {
+		pop.predictions[pos] = prediction;
+		pop.predictionErrors[pos] = predictionError;
+		pop.fitnesses[pos] = fitness;
+		pop.numerosities[pos] = numerosity;
+		pop.experiences[pos] = experience;
+		pop.actionSetSizes[pos] = actionSetSize;
+		population = pop;
+		handle = pos;
+	}
+
+	/**
+	 * Takes the statistics of the classifier back from the row of its
+	 * population, which it then leaves. Only called by the population itself
+	 * when the classifier is removed.
+	 */
+	void detach() {
+		if (population == null)
+			return;
+		prediction = getPrediction();
+		predictionError = getPredictionError();
+		fitness = getFitness();
+		numerosity = getNumerosity();
+		experience = getExperience();
+		actionSetSize = getActionSetSize();
+		population = null;
+		handle = -1;
+	}
+
+	/**
+	 * Returns the position of the classifier in its population, -1 if none.
+	 */
+	public int getHandle() {
+		return handle;
+	}
+
+	/**
+	 * Sets the position of the classifier in its population. Only called by
+	 * the population itself.
+	 */
+	void setHandle(int pos) {
+		handle = pos;
+	}
+
+	/**
+	 * Returns the position of the classifier among the members of its action
+	 * in its population, -1 if none.
+	 */
+	public int getActionHandle() {
+		return actionHandle;
+	}
+
+	/**
+	 * Sets the position of the classifier among the members of its action in
+	 * its population. Only called by the population itself.
+	 */
+	void setActionHandle(int pos) {
+		actionHandle = pos;
 	}
 
 	public boolean inexp() {
-		if (experience > 0)	return false;
+		if (getExperience() > 0)	return false;
 		return true;
 	}
 
@@ -801,10 +1163,10 @@ public class XClassifier implements Serializable {
 		DecimalFormat report = new DecimalFormat("0.000");
 
 		System.out.println(stringCondition() + ":" + action + " -> "
-				+ report.format(prediction) + ";"
-				+ report.format(predictionError) + ";" + report.format(fitness)
-				+ ";" + numerosity + ";" + experience + ";"
-				+ (float) actionSetSize);
+				+ report.format(getPrediction()) + ";"
+				+ report.format(getPredictionError()) + ";" + report.format(getFitness())
+				+ ";" + getNumerosity() + ";" + getExperience() + ";"
+				+ (float) getActionSetSize());
 	}
 
 	/**
@@ -845,7 +1207,7 @@ public class XClassifier implements Serializable {
 		DecimalFormat report = new DecimalFormat("0.000");
 
 		String actionString = "" + action;
-		pW.println(stringCondition() + ";" + actionString + ";" + report.format(prediction) + ";" + report.format(predictionError)
-			+ ";" + report.format(fitness) + ";" + numerosity + ";" + experience + ";" + disproving + ";" + (int) actionSetSize);
+		pW.println(stringCondition() + ";" + actionString + ";" + report.format(getPrediction()) + ";" + report.format(getPredictionError())
+			+ ";" + report.format(getFitness()) + ";" + getNumerosity() + ";" + getExperience() + ";" + disproving + ";" + (int) getActionSetSize());
 	}
 }
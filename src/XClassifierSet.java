@@ -1,7 +1,14 @@
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * This class handles the different sets of classifiers. It stores each set in
@@ -27,6 +34,12 @@ public class XClassifierSet implements Serializable {
 	 */
 	private XClassifierSet parentSet;
 
+	/**
+	 * The settings and the random source of the learner, shared by the
+	 * population and all sets formed out of it.
+	 */
+	private XCSConfig config;
+
 	/**
 	 * The classifier list (in form of an array)
 	 */
@@ -44,18 +57,248 @@ public class XClassifierSet implements Serializable {
 	 */
 	public boolean changed = false;
 
+	/**
+	 * The classifiers a combining set removes from and adds to the
+	 * population. They are applied to the population by applyChanges() once
+	 * combining is finished, so that the combining sets of different actions
+	 * can be processed concurrently.
+	 */
+	private ArrayList<XClassifier> retired, created;
+
+	/**
+	 * The experienced classifiers a combining set retired since it created
+	 * its last classifier, and for each classifier it created, the ones
+	 * absorbed by it. When the changes are applied to a snapshot, the
+	 * snapshot keeps these records, adding an identical classifier a created
+	 * one was merged into as its absorber, for reconcile() to replay.
+	 * 
+	 * @see #reconcile
+	 */
+	private ArrayList<XClassifier> pending;
+	private HashMap<XClassifier, ArrayList<XClassifier>> absorbed;
+
+	/**
+	 * Per action, whether the niche of the population has dirty classifiers
+	 * and whether it has to be combined completely since it lost an
+	 * experienced classifier. Only kept in the population itself.
+	 */
+	private boolean[] nicheDirty, nicheRescan;
+
+	/**
+	 * In a snapshot, the combining marks the population handed over to it:
+	 * the niche marks, the originals that were dirty and whether the
+	 * population had changed.
+	 * 
+	 * @see #restoreMarks
+	 */
+	private byte[] snapshotMarks;
+	private ArrayList<XClassifier> snapshotDirty;
+	private boolean snapshotChanged;
+
+	/**
+	 * Whether a combining set checks all pairs or only pairs with a dirty
+	 * classifier.
+	 */
+	private boolean rescan = true;
+
+	/**
+	 * The state of the sweep of a combining set that is combined in slices:
+	 * the number of passes without combining, whether the sweep was
+	 * interrupted and at which pair of classifiers it continues, and whether
+	 * it is finished.
+	 */
+	private int noCombining = 0;
+	private boolean resuming = false;
+	private XClassifier resumeFirst, resumeSecond;
+	private double resumePrediction;
+	private boolean finished = false;
+
+	/**
+	 * The number of changes marked in the niches of the population, which
+	 * lets a CombiningScheduler measure how fast the population changes.
+	 */
+	private long changeCount = 0;
+
+	/**
+	 * Packed copy of the condition intervals of the population. Row i holds
+	 * the lower and upper bounds of the classifier at array position i, so
+	 * the match loop scans one primitive array instead of dereferencing
+	 * every classifier. Only kept in the population itself.
+	 */
+	private double[] bounds;
+
+	/**
+	 * Bit-packed copy of the conditions of the population, kept instead of
+	 * bounds as long as all classifiers are binary. Row i holds the words
+	 * returned by getBits() of the classifier at array position i.
+	 * 
+	 * @see BinaryCondition
+	 */
+	private long[] bitRows;
+
+	/**
+	 * Packed copy of the actions of the population, parallel to the rows.
+	 */
+	private int[] actions;
+
+	/**
+	 * The statistics of the members of the population, parallel to the
+	 * array: row i belongs to the classifier at position i, which reads and
+	 * writes its row while it is a member. Only kept in the population
+	 * itself.
+	 * 
+	 * @see XClassifier#attach
+	 */
+	double[] predictions, predictionErrors, fitnesses, actionSetSizes;
+	int[] numerosities, experiences;
+
+	/**
+	 * The length of one row in bounds (twice the condition length), zero
+	 * while the population is empty, and -1 if classifiers of different
+	 * condition lengths are present so that no packed copy can be kept.
+	 */
+	private int rowLength;
+
+	/**
+	 * Buffer for the bit-packed current state.
+	 */
+	private long[] stateBits;
+
+	/**
+	 * Optional index over the condition intervals of the population, used to
+	 * find the candidates of a match set. Null if disabled.
+	 * 
+	 * @see XCSConfig#indexBins
+	 */
+	private IntervalIndex index;
+
+	/**
+	 * The members of the population partitioned by action, so that the
+	 * combining set of an action is recruited without scanning the whole
+	 * population. Only kept in the population itself.
+	 */
+	private XClassifier[][] byAction;
+	private int[] byActionSize;
+
+	/**
+	 * In a match set, the classifiers are grouped by action: those of action
+	 * a are at the positions from actionStart[a] to actionStart[a+1]. For
+	 * each action the sum of prediction times fitness, the sum of fitness and
+	 * the lowest experience are kept for the prediction array. actionStart
+	 * is null if the set is not a freshly built match set, the sums are then
+	 * stale and not handed out.
+	 */
+	private int[] actionStart;
+	private double[] actionPredictionSum, actionFitnessSum;
+	private int[] actionMinExperience;
+
+	/**
+	 * Buffers of a match set, kept so that forming it again allocates
+	 * nothing: the matching classifiers, the covered actions, the actions to
+	 * be covered and the next free position of each action.
+	 */
+	private XClassifier[] matching;
+	private boolean[] coveredActions;
+	private int[] pickAction, nextSlot;
+
+	/**
+	 * Buffer for the accuracies in updateFitnessSet().
+	 */
+	private double[] accuracies;
+
+	/**
+	 * The classifiers of the population by condition and action, used to find
+	 * an identical classifier when a new one is inserted. Only kept in the
+	 * population itself.
+	 */
+	private HashMap<ContentKey, XClassifier> identical;
+
+	/**
+	 * The number of micro-classifiers, the fitness sum and the sum of
+	 * prediction times numerosity of the population. They are maintained
+	 * incrementally by the population and its member classifiers.
+	 * 
+	 * @see #updateSums(int, double, double)
+	 * @see XCSConfig#checkSums
+	 */
+	private int numerositySum;
+	private double fitnessSum;
+	private double predictionSum;
+
+	/**
+	 * The deletion votes of the population by position, kept up to date by
+	 * the population and its member classifiers. Only kept in the population.
+	 * 
+	 * @see #updateVote(XClassifier)
+	 */
+	private DeletionVotes delVotes;
+
+	/**
+	 * The number of classifiers removed for their prediction error. Only
+	 * counted in the population.
+	 */
+	private int deletions = 0;
+
+	/**
+	 * Key of the identical classifier lookup, made of the condition content
+	 * and the action of a classifier. Binary conditions are hashed by their
+	 * packed form: the hash of their bounds takes only a few dozen values, as
+	 * 0.0 and 1.0 differ in high bits only.
+	 */
+	private static class ContentKey implements Serializable {
+		private final double[] elements;
+		private final int action;
+		private final int hash;
+
+		ContentKey(XClassifier cl) {
+			elements = cl.getElements();
+			action = cl.getAction();
+			long[] bits = cl.getBits();
+			hash = 31 * ((bits != null) ? Arrays.hashCode(bits) : Arrays.hashCode(elements)) + action;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof ContentKey))
+				return false;
+			ContentKey other = (ContentKey) o;
+			return hash == other.hash && action == other.action
+					&& Arrays.equals(elements, other.elements);
+		}
+	}
+
 	/**
 	 * Creates a new, empty population initializing the population array to the
 	 * maximal population size plus the number of possible actions.
 	 * 
-	 * @see XCSConstants#maxPopSize
+	 * @see XCSConfig#maxPopSize
 	 * @param numberOfActions
 	 *            The number of actions possible in the problem.
+	 * @param config
+	 *            The settings and random source of the learner.
 	 */
-	public XClassifierSet(int numberOfActions, int maxPopSize) {
+	public XClassifierSet(int numberOfActions, XCSConfig config) {
 		cllSize = 0;
 		parentSet = null;
-		clSet = new XClassifier[maxPopSize + numberOfActions];
+		this.config = config;
+		clSet = new XClassifier[config.maxPopSize + numberOfActions];
+		predictions = new double[clSet.length];
+		predictionErrors = new double[clSet.length];
+		fitnesses = new double[clSet.length];
+		actionSetSizes = new double[clSet.length];
+		numerosities = new int[clSet.length];
+		experiences = new int[clSet.length];
+		identical = new HashMap<ContentKey, XClassifier>();
+		delVotes = new DeletionVotes(clSet.length);
+		nicheDirty = new boolean[numberOfActions];
+		nicheRescan = new boolean[numberOfActions];
+		byAction = new XClassifier[numberOfActions][];
+		byActionSize = new int[numberOfActions];
+		if (config.indexBins > 0)
+			index = new IntervalIndex(config.indexBins);
 	}
 
 	/**
@@ -66,7 +309,7 @@ public class XClassifierSet implements Serializable {
 	 * deletion occurs.
 	 * 
 	 * @see XClassifier#XClassifier(double,int,String,int)
-	 * @see XCSConstants#maxPopSize
+	 * @see XCSConfig#maxPopSize
 	 * @see #deleteFromPopulation
 	 * @param state
 	 *            The current situation/problem instance.
@@ -83,28 +326,41 @@ public class XClassifierSet implements Serializable {
 	 */
 	public XClassifierSet(double[] state, XClassifierSet pop, int time,
 			int numberOfActions, int maxPopSize, boolean exploreMode) {
+		formMatchSet(state, pop, time, numberOfActions, maxPopSize, exploreMode);
+	}
+
+	/**
+	 * Forms the set again as the match set of the given state, reusing its
+	 * buffers. Parameters as in the constructor of a match set.
+	 * 
+	 * @see #XClassifierSet(double[], XClassifierSet, int, int, int, boolean)
+	 */
+	public void formMatchSet(double[] state, XClassifierSet pop, int time,
+			int numberOfActions, int maxPopSize, boolean exploreMode) {
 		parentSet = pop;
+		config = pop.config;
+		int capacity = pop.cllSize + numberOfActions;
+		if (clSet == null || clSet.length < capacity) {
+			clSet = new XClassifier[capacity];
+			matching = new XClassifier[capacity];
+		} else
+			Arrays.fill(clSet, 0, cllSize, null);
 		cllSize = 0;
-		clSet = new XClassifier[pop.cllSize + numberOfActions];
-		XClassifier[] addCl = new XClassifier[pop.cllSize + numberOfActions];
-		int entersMatchSet = 0;
+		if (coveredActions == null || coveredActions.length != numberOfActions + 1) {
+			coveredActions = new boolean[numberOfActions + 1];
+			pickAction = new int[numberOfActions];
+			nextSlot = new int[numberOfActions];
+		}
+		XClassifier[] addCl = matching;
 
 		// check, if all possible actions are existed in Population.
-		boolean[] coveredActions = new boolean[numberOfActions + 1];
 		for (int i = 0; i < numberOfActions; i++)
 			coveredActions[i] = false;
 		coveredActions[numberOfActions] = true;
 
-		for (int i=0; i<parentSet.cllSize; i++) {
-			XClassifier cl = parentSet.clSet[i];
-			if (cl.match(state)) {
-				coveredActions[cl.getAction()] = true;
-				addCl[entersMatchSet++] = cl;
-			}
-		}
+		int entersMatchSet = parentSet.collectMatching(state, addCl, coveredActions);
 
 		int uncovered = 0;
-		int[] pickAction = new int[numberOfActions];
 		for (int i=0; i<numberOfActions; i++)
 			if (!coveredActions[i]) {
 				coveredActions[numberOfActions] = false;
@@ -114,8 +370,9 @@ public class XClassifierSet implements Serializable {
 
 		int space = uncovered;
 
-		while (pop.getNumerositySum() > maxPopSize - space) {
-			pop.deleteFromPopulation(state);
+		int excess = pop.getNumerositySum() - (maxPopSize - space);
+		if (excess > 0) {
+			pop.deleteFromPopulation(state, excess);
 			pop.changed = true;
 		}
 
@@ -123,16 +380,211 @@ public class XClassifierSet implements Serializable {
 		int nums = getNumerositySum() + 1;
 		// create new XClassifer with random action and add it into the
 		// Population.
-		if ((uncovered > 0 && exploreMode) || uncovered == numberOfActions)
+		if ((uncovered > 0 && exploreMode) || uncovered == numberOfActions) {
+			XCSMetrics metrics = config.metrics;
+			boolean timed = metrics.isEnabled();
+			long start = timed ? System.nanoTime() : 0;
 			for (int i = 0; i < space; i++) {
 				newCl = new XClassifier(nums++, time, state, pickAction[i]);
-				pop.addXClassifierToPopulation(newCl);
-				addCl[entersMatchSet++] = newCl;
+				// an identical classifier would already be in the match set
+				if (pop.addXClassifierToPopulation(newCl) == newCl)
+					addCl[entersMatchSet++] = newCl;
 			}
+			metrics.count(XCSMetrics.COVERINGS, space);
+			if (timed)
+				metrics.phase(XCSMetrics.COVERING, System.nanoTime() - start);
+		}
 
-		// adding matching XClassifier to the match set
+		// adding matching XClassifier to the match set, grouped by action,
+		// and summing up the prediction array
+		if (actionStart == null || actionStart.length != numberOfActions + 1) {
+			actionStart = new int[numberOfActions + 1];
+			actionPredictionSum = new double[numberOfActions];
+			actionFitnessSum = new double[numberOfActions];
+			actionMinExperience = new int[numberOfActions];
+		} else {
+			Arrays.fill(actionStart, 0);
+			Arrays.fill(actionPredictionSum, 0.);
+			Arrays.fill(actionFitnessSum, 0.);
+		}
+		Arrays.fill(actionMinExperience, Integer.MAX_VALUE);
 		for (int i = 0; i < entersMatchSet; i++)
-			addClassifier(addCl[i]);
+			actionStart[addCl[i].getAction() + 1]++;
+		for (int a = 0; a < numberOfActions; a++)
+			actionStart[a + 1] += actionStart[a];
+		int[] next = nextSlot;
+		System.arraycopy(actionStart, 0, next, 0, numberOfActions);
+		for (int i = 0; i < entersMatchSet; i++) {
+			XClassifier cl = addCl[i];
+			int a = cl.getAction();
+			clSet[next[a]++] = cl;
+			actionPredictionSum[a] += cl.getPrediction() * cl.getFitness();
+			actionFitnessSum[a] += cl.getFitness();
+			if (cl.getExperience() < actionMinExperience[a])
+				actionMinExperience[a] = cl.getExperience();
+		}
+		cllSize = entersMatchSet;
+		Arrays.fill(addCl, 0, entersMatchSet, null);
+	}
+
+	/**
+	 * Copies the classifiers of the population matching the given state into
+	 * out and marks their actions in covered. The candidates come from the
+	 * interval index if there is one; otherwise the packed bit rows are
+	 * scanned for binary states and the packed bounds for real-valued ones.
+	 * Either way the matching classifiers are in population order, so the
+	 * index does not change the match sets.
+	 * 
+	 * @param out
+	 *            Receives the matching classifiers, must hold the population.
+	 * @param covered
+	 *            Set to true at the actions of the matching classifiers.
+	 * @return the number of matching classifiers.
+	 */
+	int collectMatching(double[] state, XClassifier[] out, boolean[] covered) {
+		int size = 0;
+		int candidates = (index != null) ? index.query(state, out) : -1;
+		if (candidates >= 0) {
+			for (int i=0; i<candidates; i++) {
+				XClassifier cl = out[i];
+				if (cl.match(state)) {
+					covered[cl.getAction()] = true;
+					out[size++] = cl;
+				}
+			}
+			Arrays.sort(out, 0, size, populationOrder);
+		} else
+		if (bitRows != null && rowLength == 2 * state.length
+				&& BinaryCondition.packState(state, stateBits)) {
+			long[] rows = bitRows;
+			int bitRowLength = 2 * stateBits.length;
+			for (int i=0, base=0; i<cllSize; i++, base+=bitRowLength)
+				if (BinaryCondition.matches(rows, base, stateBits)) {
+					covered[actions[i]] = true;
+					out[size++] = clSet[i];
+				}
+		} else
+		if (bounds != null && rowLength == 2 * state.length) {
+			double[] rows = bounds;
+			for (int i=0, base=0; i<cllSize; i++, base+=rowLength)
+				if (matchRow(rows, base, state)) {
+					covered[actions[i]] = true;
+					out[size++] = clSet[i];
+				}
+		} else
+		for (int i=0; i<cllSize; i++) {
+			XClassifier cl = clSet[i];
+			if (cl.match(state)) {
+				covered[cl.getAction()] = true;
+				out[size++] = cl;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns if the packed condition row starting at base matches the given
+	 * state.
+	 * 
+	 * @see XClassifier#match(double[])
+	 */
+	private static boolean matchRow(double[] rows, int base, double[] state) {
+		for (int i = 0; i < state.length; i++) {
+			double value = state[i];
+			if (value < rows[base + 2*i] || value > rows[base + 2*i + 1])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns if the packed condition row starting at base matches the state
+	 * of the given length starting at offset in states.
+	 */
+	private static boolean matchRow(double[] rows, int base, double[] states,
+			int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			double value = states[offset + i];
+			if (value < rows[base + 2*i] || value > rows[base + 2*i + 1])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Sums up the prediction arrays of a batch of states in one pass over
+	 * the population. Each classifier is loaded once and tested against all
+	 * states, instead of scanning the population once per state. Nothing is
+	 * covered and no classifier or buffer of the set is changed, so the
+	 * population is only read. Only called on the population.
+	 * 
+	 * @param states
+	 *            The states one after another, stateLength values each.
+	 * @param stateLength
+	 *            The length of one state.
+	 * @param batch
+	 *            Receives the sums, state s of the call at position first+s.
+	 * @param first
+	 *            The position in the batch of the first state.
+	 * @param count
+	 *            The number of states.
+	 */
+	void sumPredictions(double[] states, int stateLength, PredictionBatch batch,
+			int first, int count) {
+		int numberOfActions = batch.getNumberOfActions();
+		double[] predictionSums = batch.predictions;
+		double[] fitnessSums = batch.fitnessSums;
+		int firstBase = first * numberOfActions;
+
+		if (bitRows != null && rowLength == 2 * stateLength) {
+			int words = stateBits.length;
+			long[] packed = new long[count * words];
+			boolean binary = true;
+			for (int s = 0; s < count && binary; s++)
+				binary = BinaryCondition.packState(states, s * stateLength, stateLength,
+						packed, s * words);
+			if (binary) {
+				int rowWords = 2 * words;
+				for (int i=0, base=0; i<cllSize; i++, base+=rowWords) {
+					int a = actions[i];
+					if (a < 0 || a >= numberOfActions)
+						continue;
+					double fitness = clSet[i].getFitness();
+					double weighted = clSet[i].getPrediction() * fitness;
+					for (int s = 0, at = firstBase + a; s < count; s++, at += numberOfActions)
+						if (BinaryCondition.matches(bitRows, base, packed, s * words, words)) {
+							predictionSums[at] += weighted;
+							fitnessSums[at] += fitness;
+						}
+				}
+				return;
+			}
+		}
+
+		for (int i = 0; i < cllSize; i++) {
+			XClassifier cl = clSet[i];
+			int a = cl.getAction();
+			if (a < 0 || a >= numberOfActions)
+				continue;
+			double[] rows;
+			int base;
+			if (bounds != null && rowLength == 2 * stateLength) {
+				rows = bounds;
+				base = i * rowLength;
+			} else {
+				rows = cl.getElements();
+				base = 0;
+				if (rows.length != 2 * stateLength)
+					continue;
+			}
+			double fitness = cl.getFitness();
+			double weighted = cl.getPrediction() * fitness;
+			for (int s = 0, at = firstBase + a; s < count; s++, at += numberOfActions)
+				if (matchRow(rows, base, states, s * stateLength, stateLength)) {
+					predictionSums[at] += weighted;
+					fitnessSums[at] += fitness;
+				}
+		}
 	}
 
 	/**
@@ -144,16 +596,66 @@ public class XClassifierSet implements Serializable {
 	 *            The chosen action for the action set.
 	 */
 	public XClassifierSet(XClassifierSet matchSet, int action) {
+		formActionSet(matchSet, action);
+	}
+
+	/**
+	 * Forms the set again as the action set of the given match set and
+	 * action, reusing its array.
+	 * 
+	 * @see #XClassifierSet(XClassifierSet, int)
+	 */
+	public void formActionSet(XClassifierSet matchSet, int action) {
 		parentSet = matchSet;
+		config = matchSet.config;
+		if (clSet != null)
+			Arrays.fill(clSet, 0, cllSize, null);
 		cllSize = 0;
-		clSet = new XClassifier[matchSet.cllSize];
 
+		int[] start = matchSet.actionStart;
+		if (start != null && action >= 0 && action < start.length - 1) {
+			int size = start[action + 1] - start[action];
+			if (clSet == null || clSet.length < size)
+				clSet = new XClassifier[size];
+			System.arraycopy(matchSet.clSet, start[action], clSet, 0, size);
+			cllSize = size;
+			return;
+		}
+
+		if (clSet == null || clSet.length < matchSet.cllSize)
+			clSet = new XClassifier[matchSet.cllSize];
 		for (int i = 0; i < matchSet.cllSize; i++) {
 			if (matchSet.clSet[i].getAction() == action)
 				addClassifier(matchSet.clSet[i]);
 		}
 	}
 
+	/**
+	 * Returns the sums of prediction times fitness per action of a match set,
+	 * or null if the set does not keep them or was changed since it was
+	 * built.
+	 */
+	double[] getActionPredictionSums() {
+		return (actionStart != null) ? actionPredictionSum : null;
+	}
+
+	/**
+	 * Returns the sums of fitness per action of a match set, or null if the
+	 * set does not keep them or was changed since it was built.
+	 */
+	double[] getActionFitnessSums() {
+		return (actionStart != null) ? actionFitnessSum : null;
+	}
+
+	/**
+	 * Returns the lowest experience per action of a match set
+	 * (Integer.MAX_VALUE for absent actions), or null if the set does not
+	 * keep them or was changed since it was built.
+	 */
+	int[] getActionMinExperiences() {
+		return (actionStart != null) ? actionMinExperience : null;
+	}
+
 	/**
 	 * Transform real string to binary for condition
 	 * 
@@ -179,31 +681,205 @@ public class XClassifierSet implements Serializable {
 				+ XCSConstants.predTol);
 	}
 
+	/**
+	 * Checks whether the classifier overlaps the candidate condition, given
+	 * either as interval pairs or, for binary candidates, bit-packed.
+	 */
+	private static boolean condOverlap(XClassifier cl, double[] clStar,
+			long[] starBits, int numElements) {
+		if (starBits == null)
+			return cl.condOverlap(clStar);
+		if (cl.getNumElements() != numElements)
+			return false;
+		if (cl.getBits() != null)
+			return cl.condOverlap(starBits);
+		return cl.condOverlap(BinaryCondition.unpack(starBits, numElements));
+	}
+
+	/**
+	 * Checks whether the classifier is subsumable to the candidate condition,
+	 * given either as interval pairs or, for binary candidates, bit-packed.
+	 */
+	private static boolean isSubsumableTo(XClassifier cl, double[] clStar,
+			long[] starBits, int numElements) {
+		if (starBits == null)
+			return cl.isSubsumableTo(clStar);
+		if (cl.getNumElements() != numElements)
+			return false;
+		if (cl.getBits() != null)
+			return cl.isSubsumableTo(starBits);
+		return cl.isSubsumableTo(BinaryCondition.unpack(starBits, numElements));
+	}
+
+	/**
+	 * Orders classifiers by ascending prediction, and classifiers of equal
+	 * prediction by their position in the population.
+	 */
+	private static class PredictionOrder implements Comparator<XClassifier>, Serializable {
+		public int compare(XClassifier cl1, XClassifier cl2) {
+			int order = Double.compare(cl1.getPrediction(), cl2.getPrediction());
+			return (order != 0) ? order : Integer.compare(cl1.getHandle(), cl2.getHandle());
+		}
+	}
+
+	private static final PredictionOrder predictionOrder = new PredictionOrder();
+
+	/**
+	 * Orders classifiers by their position in the population.
+	 */
+	private static class PopulationOrder implements Comparator<XClassifier>, Serializable {
+		public int compare(XClassifier cl1, XClassifier cl2) {
+			return Integer.compare(cl1.getHandle(), cl2.getHandle());
+		}
+	}
+
+	private static final PopulationOrder populationOrder = new PopulationOrder();
+
+	/**
+	 * Returns the first position in the set, which must be ordered by
+	 * prediction, whose classifier has a prediction not lower than the given
+	 * one.
+	 */
+	private int lowerBound(double prediction) {
+		int low = 0, high = cllSize;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (clSet[mid].getPrediction() < prediction)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the position of the classifier in the set, or -1 if it is not
+	 * a member.
+	 */
+	private int indexOf(XClassifier classifier) {
+		for (int i = 0; i < cllSize; i++)
+			if (clSet[i] == classifier)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Inserts the classifier into the set, which must be ordered by
+	 * prediction, keeping the order.
+	 * 
+	 * @return the position of the inserted classifier.
+	 */
+	private int insertByPrediction(XClassifier classifier) {
+		int pos = lowerBound(classifier.getPrediction());
+		System.arraycopy(clSet, pos, clSet, pos + 1, cllSize - pos);
+		clSet[pos] = classifier;
+		cllSize++;
+		return pos;
+	}
+
+	/**
+	 * Builds an OverlapIndex over the set, or returns null if the set is empty
+	 * or its classifiers differ in length. Binary sets are indexed by the two
+	 * values of each attribute.
+	 */
+	private OverlapIndex overlapIndex() {
+		if (cllSize == 0)
+			return null;
+		int numElements = clSet[0].getNumElements();
+		boolean binary = true;
+		for (int i = 0; i < cllSize; i++) {
+			if (clSet[i].getNumElements() != numElements)
+				return null;
+			if (clSet[i].getBits() == null)
+				binary = false;
+		}
+
+		int bins = binary ? 2 : (config.indexBins > 0) ? config.indexBins : 8;
+		OverlapIndex overlaps = new OverlapIndex(numElements, bins, cllSize);
+		for (int i = 0; i < cllSize; i++)
+			overlaps.add(clSet[i]);
+		return overlaps;
+	}
+
 	/**
 	 * Collects classifiers in the population having a particular action. The
 	 * classifiers will enter the Combining Set.
+	 * 
+	 * The set is kept ordered by prediction, so for each classifier only the
+	 * following ones up to a prediction difference of predTol are candidates
+	 * for combining. The classifiers overlapping a candidate condition are
+	 * looked up in an OverlapIndex instead of testing the whole set.
+	 * 
+	 * The sweep stops once the given budget is used up and continues at the
+	 * next call. Meanwhile the population may change, so the set then drops
+	 * the members no longer in the population, is ordered again and continues
+	 * at the pair where it stopped, or at the prediction of its first
+	 * classifier if that one is gone.
+	 * 
+	 * @param maxPairs
+	 *            The number of candidate pairs to check, 0 for no limit.
+	 * @param deadline
+	 *            The System.nanoTime() to stop at, 0 for no limit.
+	 * @return the number of candidate pairs checked.
 	 */
-	private XClassifier[] combineSet(XClassifier[] clComb, int action) {
+	private int combineSet(int action, int maxPairs, long deadline) {
 		// Set reporting true to print changes to the console.
 		boolean reporting = false;
-		int numElements = clComb[0].getNumElements();
-		double[] clStar = new double[numElements];
-		int noCombining = 0;
+		double[] clStar = null;
+		long[] starBits = null;
+		XClassifier[] clComb = clSet;
+		int pairs = 0, combines = 0, disprovals = 0;
+
+		int start = 0, startSecond = 0;
+		if (resuming) {
+			for (int i = 0; i < cllSize; i++)
+				if (clSet[i].getPopulation() != parentSet)
+					clSet[i] = null;
+			compact();
+			Arrays.sort(clSet, 0, cllSize, predictionOrder);
+			start = indexOf(resumeFirst);
+			if (start < 0)
+				start = lowerBound(resumePrediction);
+			else
+				startSecond = indexOf(resumeSecond);
+			resuming = false;
+			resumeFirst = null;
+			resumeSecond = null;
+		}
+		OverlapIndex overlaps = overlapIndex();
+		XClassifier[] candidates = (overlaps != null) ? new XClassifier[overlaps.capacity()] : null;
 
 		while (noCombining<2) {
 
 			int minExp = XCSConstants.minExp;
 			double predTol = XCSConstants.predTol;
 
-			for (int i=0; i<cllSize; i++)
-				for (int j=i+1; j<cllSize; j++)
-					if (clComb[i].getExperience() >= minExp && clComb[j].getExperience() >= minExp 
-					&& Math.abs(clComb[i].getPrediction() - clComb[j].getPrediction()) <= predTol) {
-						clStar = combineCondition(i, j);
-						String stringElements = "";
-						for (int m=0;m<clStar.length/2;m++)
-							if (clStar[2*m] == clStar[2*m+1]) stringElements += "[" + clStar[2*m] + "]";
-							else stringElements += "[" + clStar[2*m] + ".." + clStar[2*m+1] + "]";
+			for (int i=start; i<cllSize; i++) {
+				int first = (startSecond > i) ? startSecond : i + 1;
+				startSecond = 0;
+				if (clComb[i].getExperience() < minExp)
+					continue;
+				for (int j=first; j<cllSize && clComb[j].getPrediction() - clComb[i].getPrediction() <= predTol; j++)
+					if (clComb[j].getExperience() >= minExp
+							&& (rescan || clComb[i].isDirty() || clComb[j].isDirty())) {
+						if (pairs > 0 && ((maxPairs > 0 && pairs >= maxPairs)
+								|| (deadline != 0 && System.nanoTime() - deadline > 0))) {
+							resuming = true;
+							resumeFirst = clComb[i];
+							resumeSecond = clComb[j];
+							resumePrediction = clComb[i].getPrediction();
+							countCombining(combines, disprovals, 0);
+							return pairs;
+						}
+						pairs++;
+						int numElements = clComb[i].getNumElements();
+						starBits = null;
+						clStar = null;
+						if (clComb[i].getBits() != null && clComb[j].getBits() != null
+								&& clComb[j].getNumElements() == numElements)
+							starBits = BinaryCondition.combine(clComb[i].getBits(), clComb[j].getBits());
+						else
+							clStar = combineCondition(i, j);
 						
 						int testNum = clComb[i].getNumerosity() + clComb[j].getNumerosity();
 						double testPred = clComb[i].getPrediction() * clComb[i].getNumerosity()
@@ -211,57 +887,76 @@ public class XClassifierSet implements Serializable {
 						double clStarPred = testPred / testNum;
 						
 						if (reporting) {
+							if (clStar == null)
+								clStar = BinaryCondition.unpack(starBits, numElements);
+							String stringElements = "";
+							for (int m=0;m<clStar.length/2;m++)
+								if (clStar[2*m] == clStar[2*m+1]) stringElements += "[" + clStar[2*m] + "]";
+								else stringElements += "[" + clStar[2*m] + ".." + clStar[2*m+1] + "]";
 							System.out.println(testPred + ";" +testNum);
 							System.out.println("Parent1("+i+"): " + clComb[i].stringCondition() + ":" + clComb[i].getAction() + "->" + clComb[i].getPrediction() +
 									"\nParent2("+j+"): " + clComb[j].stringCondition() + ":" + clComb[j].getAction() + "->" + clComb[j].getPrediction());
 							System.out.print("Candidate:" + condRealToBin(stringElements) + ":" + action + "->" + clStarPred);
 						}
 						
+						// the classifiers possibly overlapping the candidate,
+						// for both the disproval and the absorption
+						XClassifier[] pool = clComb;
+						int poolSize = cllSize;
+						if (overlaps != null) {
+							pool = candidates;
+							poolSize = (starBits != null) ? overlaps.query(starBits, candidates)
+									: overlaps.query(clStar, candidates);
+						}
+
 						boolean noDisproval = true;
-						for (int k=0; k<cllSize; k++)
-							if (k != i && k != j && clComb[k].getExperience() > 0)
-								if (clComb[k].condOverlap(clStar) && !withinRange(clStarPred, clComb[k].getPrediction())) {
+						for (int k=0; k<poolSize; k++)
+							if (pool[k] != clComb[i] && pool[k] != clComb[j] && pool[k].getExperience() > 0)
+								if (condOverlap(pool[k], clStar, starBits, numElements) && !withinRange(clStarPred, pool[k].getPrediction())) {
 									noDisproval = false;
 									if (reporting) {
-										System.out.println(" ... is disproved by " + clComb[k].stringCondition()
-												+ ":" + action + "->" + clComb[k].getPrediction());										
+										System.out.println(" ... is disproved by " + pool[k].stringCondition()
+												+ ":" + action + "->" + pool[k].getPrediction());										
 									}
-									if (XCSConstants.maxDispRate>0) clComb[k].incrementDisproving();
-										else k = cllSize;
+									if (config.maxDispRate>0) pool[k].incrementDisproving();
+										else k = poolSize;
 								}
 						
+						if (!noDisproval)
+							disprovals++;
+
 						if (noDisproval) {
 							if (reporting)
 								System.out.println(" ... is accepted.");
 							
-							XClassifier[] clDel = new XClassifier[cllSize];
-							int dels = 0;
 							double clPred = 0.0;
 							int clNum = 0;
 							int clExp = 0;
 
-							for (int n = cllSize - 1; n >= 0; n--) {
-								double itsPred = clComb[n].getPrediction();
-								int itsExp = clComb[n].getExperience();
+							for (int n = poolSize - 1; n >= 0; n--) {
+								double itsPred = pool[n].getPrediction();
+								int itsExp = pool[n].getExperience();
 								boolean range = withinRange(clStarPred, itsPred);
-								if (clComb[n].isSubsumableTo(clStar) && (range || itsExp == 0)) {
-									clDel[dels] = clComb[n];
-
+								if (isSubsumableTo(pool[n], clStar, starBits, numElements) && (range || itsExp == 0)) {
 									if (itsExp > 0) {
-										int itsNum = clDel[dels].getNumerosity();
+										int itsNum = pool[n].getNumerosity();
 										clExp += itsExp;
 										clNum += itsNum;
-										clPred += clDel[dels].getPrediction()
+										clPred += pool[n].getPrediction()
 												* itsNum;
 									}
 
-									parentSet.removeClassifier(clDel[dels]);
-									removeClassifier(clDel[dels]);
-									dels++;
+									retire(pool[n]);
+									if (overlaps != null)
+										overlaps.remove(pool[n]);
+									pool[n] = null;
 								}
 							}
+							int removedBefore = compact(overlaps, i);
 							clPred = clPred / clNum;
 
+							if (clStar == null)
+								clStar = BinaryCondition.unpack(starBits, numElements);
 							XClassifier clNew = new XClassifier(clStar, action);
 
 							double beta = XCSConstants.beta;
@@ -278,28 +973,65 @@ public class XClassifierSet implements Serializable {
 							clNew.setPredictionError(clPredErr);
 							clNew.setDisproving(0);
 
-							parentSet.addXClassifierToPopulation(clNew);
-							addClassifier(clNew);
+							// continue the sweep behind the absorbed classifier i,
+							// pairs with the new classifier are checked in the
+							// next pass
+							int next = i - removedBefore;
+							if (create(clNew) == clNew) {
+								if (insertByPrediction(clNew) <= next)
+									next++;
+								if (overlaps != null) {
+									overlaps.add(clNew);
+									if (candidates.length < overlaps.capacity())
+										candidates = new XClassifier[overlaps.capacity()];
+								}
+							}
 
-							parentSet.changed = true;
+							changed = true;
+							combines++;
 							noCombining = 0;
+							i = next - 1;
+							break;
 						}
 					}
+			}
+			start = 0;
 			noCombining++;
 		}
 
 		//check outlier
-		if (XCSConstants.maxDispRate > 0)
+		int outliers = 0;
+		if (config.maxDispRate > 0)
 			for (int i=0; i<cllSize; i++)
 				if (clSet[i].getExperience() > 0) {
-					if (clSet[i].getDisproving() / clSet[i].getExperience() > Math.pow(10, XCSConstants.maxDispRate)) {
-						parentSet.removeClassifier(clSet[i]);
-						removeClassifier(i);
-						parentSet.changed = true;
+					if (clSet[i].getDisproving() / clSet[i].getExperience() > Math.pow(10, config.maxDispRate)) {
+						retire(clSet[i]);
+						clSet[i] = null;
+						changed = true;
+						outliers++;
 					}			
 				}
+		compact();
+		countCombining(combines, disprovals, outliers);
+
+		for (int i=0; i<cllSize; i++)
+			clSet[i].setClean();
+
+		finished = true;
+		return pairs;
+	}
 
-		return clComb;
+	/**
+	 * Reports the events of a combining pass to the metrics.
+	 */
+	private void countCombining(int combines, int disprovals, int outliers) {
+		XCSMetrics metrics = config.metrics;
+		if (combines > 0)
+			metrics.count(XCSMetrics.COMBINES, combines);
+		if (disprovals > 0)
+			metrics.count(XCSMetrics.DISPROVALS, disprovals);
+		if (outliers > 0)
+			metrics.count(XCSMetrics.OUTLIERS, outliers);
 	}
 
 	/**
@@ -314,24 +1046,226 @@ public class XClassifierSet implements Serializable {
 	 *            The action of the member classifiers.
 	 */
 	public XClassifierSet(XClassifierSet pop, int length, int action) {
+		this(pop, length, action, true);
+	}
+
+	/**
+	 * Constructs a combining set out of population and, if combineNow is set,
+	 * combines it and applies the changes to the population. Otherwise the
+	 * caller has to call combineNiche() and applyChanges().
+	 */
+	private XClassifierSet(XClassifierSet pop, int length, int action, boolean combineNow) {
 		this.parentSet = pop;
+		config = pop.config;
 		cllSize = 0;
-		parentSet.changed = false;
+		if (combineNow)
+			parentSet.changed = false;
+		retired = new ArrayList<XClassifier>();
+		created = new ArrayList<XClassifier>();
+		pending = new ArrayList<XClassifier>();
+		absorbed = new HashMap<XClassifier, ArrayList<XClassifier>>();
+		rescan = !config.incrementalCombining || parentSet.nicheRescan(action);
+		// the combining set takes over the marks of its niche
+		if (action < parentSet.nicheDirty.length) {
+			parentSet.nicheDirty[action] = false;
+			parentSet.nicheRescan[action] = false;
+		}
 
 		// recruiting
-		int[] member = new int[parentSet.cllSize];
-		int members = 0;
-		for (int i = 0; i < parentSet.cllSize; i++)
-			if (parentSet.clSet[i].getAction() == action
-					&& (length == 0 || parentSet.clSet[i].getNumElements() == length))
-				member[members++] = i;
+		XClassifier[] niche = parentSet.clSet;
+		int nicheSize = parentSet.cllSize;
+		if (parentSet.byAction != null) {
+			nicheSize = (action < parentSet.byAction.length) ? parentSet.byActionSize[action] : 0;
+			niche = (nicheSize > 0) ? parentSet.byAction[action] : null;
+		}
+
+		clSet = new XClassifier[nicheSize];
+		for (int i = 0; i < nicheSize; i++)
+			if (niche[i].getAction() == action
+					&& (length == 0 || niche[i].getNumElements() == length))
+				addClassifier(niche[i]);
+		Arrays.sort(clSet, 0, cllSize, predictionOrder);
+
+		if (combineNow) {
+			combineNiche(action);
+			applyChanges(action);
+		}
+	}
+
+	/**
+	 * Combines the classifiers of the combining set. The population is not
+	 * modified until applyChanges() is called.
+	 */
+	private void combineNiche(int action) {
+		combineSet(action, 0, 0);
+	}
+
+	/**
+	 * Constructs the combining set of the given action for combining in
+	 * slices, or returns null if the niche has not changed since it was
+	 * combined last.
+	 * 
+	 * @see CombiningScheduler
+	 */
+	XClassifierSet recruitNiche(int action) {
+		if (config.incrementalCombining && !nicheDirty(action))
+			return null;
+		return new XClassifierSet(this, 0, action, false);
+	}
+
+	/**
+	 * Continues combining the combining set within the given budget. The
+	 * population is not modified until applyChanges() is called.
+	 * 
+	 * @param maxPairs
+	 *            The number of candidate pairs to check, 0 for no limit.
+	 * @param deadline
+	 *            The System.nanoTime() to stop at, 0 for no limit.
+	 * @return the number of candidate pairs checked.
+	 */
+	int combineSlice(int action, int maxPairs, long deadline) {
+		return combineSet(action, maxPairs, deadline);
+	}
+
+	/**
+	 * Returns if combining the combining set is finished.
+	 */
+	boolean isCombined() {
+		return finished;
+	}
+
+	/**
+	 * Returns the number of changes marked in the niches of the population.
+	 */
+	long getChangeCount() {
+		return changeCount;
+	}
+
+	/**
+	 * Records the removal of a member of the combining set from the
+	 * population. A classifier created by this combining set is simply
+	 * dropped.
+	 */
+	private void retire(XClassifier classifier) {
+		if (!created.remove(classifier))
+			retired.add(classifier);
+		if (classifier.getExperience() > 0)
+			pending.add(classifier);
+	}
+
+	/**
+	 * Records the addition of a new classifier to the population.
+	 * 
+	 * @return the classifier representing the new one in the combining set,
+	 *         which is either the new one or an identical member.
+	 */
+	private XClassifier create(XClassifier classifier) {
+		created.add(classifier);
+		absorbed.put(classifier, new ArrayList<XClassifier>(pending));
+		pending.clear();
+		for (int i = 0; i < cllSize; i++)
+			if (clSet[i] != null && clSet[i].equals(classifier))
+				return clSet[i];
+		return classifier;
+	}
+
+	/**
+	 * Applies the removals and additions recorded by the combining set to the
+	 * population. The changes combining makes itself do not mark the niche of
+	 * the given action.
+	 */
+	void applyChanges(int action) {
+		long count = parentSet.changeCount;
+		boolean dirty = parentSet.nicheDirty(action);
+		boolean rescan = parentSet.nicheRescan(action);
+		for (int i = 0; i < retired.size(); i++)
+			parentSet.removeClassifier(retired.get(i));
+		if (parentSet.absorbed != null)
+			parentSet.absorbed.putAll(absorbed);
+		for (int i = 0; i < created.size(); i++) {
+			XClassifier cl = created.get(i);
+			XClassifier member = parentSet.addXClassifierToPopulation(cl);
+			if (parentSet.absorbed != null && member != cl) {
+				ArrayList<XClassifier> merged = parentSet.absorbed.get(member);
+				if (merged == null)
+					parentSet.absorbed.put(member, merged = new ArrayList<XClassifier>());
+				merged.add(cl);
+			}
+		}
+		retired.clear();
+		created.clear();
+		pending.clear();
+		absorbed.clear();
+		if (changed)
+			parentSet.changed = true;
+		parentSet.changeCount = count;
+		if (action < parentSet.nicheDirty.length) {
+			parentSet.nicheDirty[action] = dirty;
+			parentSet.nicheRescan[action] = rescan;
+		}
+	}
+
+	/**
+	 * Marks the niche of the given action in the population as having dirty
+	 * classifiers, and if rescan is set, as having to be combined completely.
+	 */
+	void markNiche(int action, boolean rescan) {
+		if (nicheDirty == null)
+			return;
+		if (action >= nicheDirty.length) {
+			nicheDirty = Arrays.copyOf(nicheDirty, action + 1);
+			nicheRescan = Arrays.copyOf(nicheRescan, action + 1);
+		}
+		nicheDirty[action] = true;
+		if (rescan)
+			nicheRescan[action] = true;
+		changeCount++;
+	}
 
-		clSet = new XClassifier[members];
+	/**
+	 * Returns if the niche of the given action in the population has to be
+	 * combined.
+	 */
+	private boolean nicheDirty(int action) {
+		return action >= nicheDirty.length || nicheDirty[action];
+	}
+
+	/**
+	 * Returns if the niche of the given action in the population has to be
+	 * combined completely.
+	 */
+	private boolean nicheRescan(int action) {
+		return action >= nicheRescan.length || nicheRescan[action];
+	}
 
-		for (int i = 0; i < members; i++)
-			addClassifier(parentSet.clSet[member[i]]);
+	/**
+	 * Returns the combining marks of the niches of the population, bit 0
+	 * set if the niche is dirty and bit 1 if it has to be combined
+	 * completely.
+	 * 
+	 * @see PopulationCheckpoint
+	 */
+	byte[] getNicheMarks() {
+		byte[] marks = new byte[nicheDirty.length];
+		for (int i = 0; i < marks.length; i++)
+			marks[i] = (byte) ((nicheDirty[i] ? 1 : 0) | (nicheRescan[i] ? 2 : 0));
+		return marks;
+	}
 
-		this.clSet = combineSet(this.clSet, action);
+	/**
+	 * Restores the deletion count and the combining marks of the niches of a
+	 * population filled from a checkpoint.
+	 * 
+	 * @see PopulationCheckpoint
+	 */
+	void restore(int deletions, byte[] nicheMarks) {
+		this.deletions = deletions;
+		nicheDirty = new boolean[nicheMarks.length];
+		nicheRescan = new boolean[nicheMarks.length];
+		for (int i = 0; i < nicheMarks.length; i++) {
+			nicheDirty[i] = (nicheMarks[i] & 1) != 0;
+			nicheRescan[i] = (nicheMarks[i] & 2) != 0;
+		}
 	}
 
 	/**
@@ -375,8 +1309,9 @@ public class XClassifierSet implements Serializable {
 		while (pop.parentSet != null)
 			pop = pop.parentSet;
 
-		if (clSet[0] != null) {
-			double P = reward //+ XCSConstants.gamma * maxPrediction; // gamma is for multistep
+		if (cllSize > 0) {
+			double P = reward; //+ XCSConstants.gamma * maxPrediction; // gamma is for multistep
+			int numSum = getNumerositySum();
 
 			for (int i = 0; i < cllSize; i++) {
 				double prevPredErr = clSet[i].getPredictionError();
@@ -392,20 +1327,22 @@ public class XClassifierSet implements Serializable {
 						&& clSet[i].getExperience() > 2 * XCSConstants.minExp) {
 					//System.out.println(clSet[i].stringCondition() + ":" + clSet[i].getAction() + "->" + clSet[i].getPrediction() + " ... is removed.");
 					pop.removeClassifier(clSet[i]);
+					numSum -= Math.abs(clSet[i].getNumerosity());
 					removeClassifier(i);
 					i--;
 					removed = true;
 					pop.changed = true;
-					XCSConstants.deletion++;
+					pop.deletions++;
+					config.metrics.count(XCSMetrics.REMOVALS, 1);
 					
-					XClassifier newCl = new XClassifier(getNumerositySum()+1, 0, state, action);
+					XClassifier newCl = new XClassifier(numSum+1, 0, state, action);
 					pop.addXClassifierToPopulation(newCl);
 				}
 
 				if (!removed) {
 					if (clSet[i].getExperience() == XCSConstants.minExp)
 						pop.changed = true;
-					clSet[i].updateActionSetSize(getNumerositySum());
+					clSet[i].updateActionSetSize(numSum);
 				}
 			}
 			updateFitnessSet();				
@@ -420,7 +1357,8 @@ public class XClassifierSet implements Serializable {
 	 */
 	private void updateFitnessSet() {
 		double accuracySum = 0.;
-		double[] accuracies = new double[cllSize];
+		if (accuracies == null || accuracies.length < cllSize)
+			accuracies = new double[clSet.length];
 
 		// First, calculate the accuracies of the classifier and the accuracy
 		// sums
@@ -482,14 +1420,205 @@ public class XClassifierSet implements Serializable {
 	}
 
 	/**
-	 * Loop actions for combining set creation.
+	 * Loop actions for combining set creation. The combining sets of the
+	 * actions are disjoint, so they are combined concurrently on the
+	 * combining pool if parallelCombining is set. Their changes are applied to the population
+	 * afterwards in the order of the actions, so the result is the same
+	 * either way.
 	 * 
 	 * @param numberOfActions
 	 *            The number of actions involved.
 	 */
 	public void combine(int numberOfActions) {
+		XCSMetrics metrics = config.metrics;
+		boolean timed = metrics.isEnabled();
+		long start = timed ? System.nanoTime() : 0;
+		XClassifierSet[] niches = new XClassifierSet[numberOfActions];
 		for (int i=0; i<numberOfActions; i++)
-			this.createCombiningSet(i);
+			if (!config.incrementalCombining || nicheDirty(i))
+				niches[i] = new XClassifierSet(this, 0, i, false);
+
+		if (config.parallelCombining && numberOfActions > 1) {
+			ForkJoinPool pool = (config.combiningPool != null) ? config.combiningPool : ForkJoinPool.commonPool();
+			ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[numberOfActions];
+			for (int i=0; i<numberOfActions; i++) {
+				final XClassifierSet niche = niches[i];
+				final int action = i;
+				if (niche == null)
+					continue;
+				tasks[i] = pool.submit(new Runnable() {
+					public void run() {
+						niche.combineNiche(action);
+					}
+				});
+			}
+			for (int i=0; i<numberOfActions; i++)
+				if (tasks[i] != null)
+					tasks[i].join();
+		} else
+			for (int i=0; i<numberOfActions; i++)
+				if (niches[i] != null)
+					niches[i].combineNiche(i);
+
+		// merge in the order of the actions
+		changed = false;
+		for (int i=0; i<numberOfActions; i++)
+			if (niches[i] != null)
+				niches[i].applyChanges(i);
+		if (timed)
+			metrics.phase(XCSMetrics.COMBINING, System.nanoTime() - start);
+	}
+
+	/**
+	 * Returns a new population holding copies of the classifiers of this
+	 * population, so that it can be combined while this one keeps learning.
+	 * 
+	 * @see #reconcile
+	 * @param originals
+	 *            Receives the original classifier of each copy. Its iteration
+	 *            order determines the order in which reconcile() retires
+	 *            classifiers.
+	 * @return the copy of the population.
+	 */
+	public XClassifierSet snapshot(Map<XClassifier, XClassifier> originals) {
+		XClassifierSet copy = new XClassifierSet(nicheDirty.length, config);
+		copy.snapshotMarks = getNicheMarks();
+		copy.snapshotDirty = new ArrayList<XClassifier>();
+		copy.snapshotChanged = changed;
+		copy.absorbed = new HashMap<XClassifier, ArrayList<XClassifier>>();
+		for (int i = 0; i < cllSize; i++) {
+			XClassifier clCopy = clSet[i].duplicate();
+			copy.addClassifier(clCopy);
+			originals.put(clCopy, clSet[i]);
+			if (clSet[i].isDirty())
+				copy.snapshotDirty.add(clSet[i]);
+			// changes from now on are left to the next combining
+			clSet[i].setClean();
+		}
+		copy.changed = changed;
+		copy.nicheDirty = nicheDirty.clone();
+		copy.nicheRescan = nicheRescan.clone();
+		Arrays.fill(nicheDirty, false);
+		Arrays.fill(nicheRescan, false);
+		return copy;
+	}
+
+	/**
+	 * Applies the result of combining a snapshot to this population.
+	 * Originals whose copies were combined away are removed if they are still
+	 * in the population; the others keep the statistics learned in the
+	 * meantime and only take over the disproving count. The record of which
+	 * classifiers absorbed which the snapshot kept while combining is
+	 * replayed: a classifier created by combining takes over the current
+	 * numerosity of the removed originals whose experienced copies it
+	 * absorbed, directly or through classifiers created and absorbed in
+	 * between, and is dropped if none of them is left, so combining never
+	 * brings back micro-classifiers deleted in the meantime. A copy that
+	 * absorbed an identical created classifier passes its share on to its
+	 * original.
+	 * 
+	 * @see #snapshot
+	 * @param combined
+	 *            The snapshot after combining.
+	 * @param originals
+	 *            The originals of the copies as filled in by snapshot().
+	 * @throws IllegalStateException
+	 *             if the population has no room for a created classifier.
+	 */
+	public void reconcile(XClassifierSet combined, Map<XClassifier, XClassifier> originals) {
+		// the experienced copies combined away whose originals were still
+		// present, with the numerosity of the originals
+		HashMap<XClassifier, Integer> absorbedNum = new HashMap<XClassifier, Integer>();
+		for (Map.Entry<XClassifier, XClassifier> entry : originals.entrySet()) {
+			XClassifier copy = entry.getKey();
+			XClassifier original = entry.getValue();
+			if (copy.getPopulation() == combined)
+				original.setDisproving(copy.getDisproving());
+			else if (original.getPopulation() == this) {
+				if (copy.getExperience() > 0)
+					absorbedNum.put(copy, original.getNumerosity());
+				removeClassifier(original);
+			}
+		}
+
+		for (int i = 0; i < combined.cllSize; i++) {
+			XClassifier cl = combined.clSet[i];
+			int num = absorbedNumerosity(cl, combined.absorbed, absorbedNum);
+			if (num == 0)
+				continue;
+			XClassifier original = originals.get(cl);
+			if (original != null && original.getPopulation() == this) {
+				original.addNumerosity(num);
+				continue;
+			}
+			// take the classifier with its statistics out of the snapshot
+			cl.detach();
+			cl.addNumerosity(num - cl.getNumerosity());
+			if (cllSize == clSet.length && getIdenticalClassifier(cl) == null)
+				throw new IllegalStateException("No room in the population for the classifier "
+						+ cl.stringCondition() + ":" + cl.getAction() + " created by combining.");
+			addXClassifierToPopulation(cl);
+		}
+
+		if (combined.changed)
+			changed = true;
+	}
+
+	/**
+	 * Returns the numerosity the given classifier of a combined snapshot
+	 * absorbed: the sum over the copies in its record, directly or through
+	 * the records of the classifiers it absorbed, of the numerosity of their
+	 * removed originals. The records and numerosities used are taken out so
+	 * that each counts once.
+	 * 
+	 * @param record
+	 *            The classifiers each classifier absorbed.
+	 * @param absorbedNum
+	 *            The numerosity of the removed original of each copy.
+	 */
+	private static int absorbedNumerosity(XClassifier cl,
+			Map<XClassifier, ArrayList<XClassifier>> record, Map<XClassifier, Integer> absorbedNum) {
+		int num = 0;
+		if (record == null)
+			return num;
+		ArrayList<XClassifier> open = new ArrayList<XClassifier>();
+		open.add(cl);
+		while (!open.isEmpty()) {
+			ArrayList<XClassifier> subsumed = record.remove(open.remove(open.size() - 1));
+			if (subsumed == null)
+				continue;
+			for (int k = 0; k < subsumed.size(); k++) {
+				Integer n = absorbedNum.remove(subsumed.get(k));
+				if (n != null)
+					num += n;
+				open.add(subsumed.get(k));
+			}
+		}
+		return num;
+	}
+
+	/**
+	 * Gives the combining marks handed over to a snapshot back to this
+	 * population, used when combining the snapshot was cancelled or failed.
+	 * The dirty originals still present and their niches are marked again,
+	 * so the next combining covers their changes.
+	 * 
+	 * @see #snapshot
+	 * @param snapshot
+	 *            The snapshot taken of this population.
+	 */
+	public void restoreMarks(XClassifierSet snapshot) {
+		for (int i = 0; i < snapshot.snapshotDirty.size(); i++) {
+			XClassifier cl = snapshot.snapshotDirty.get(i);
+			if (cl.getPopulation() == this)
+				cl.markDirty();
+		}
+		byte[] marks = snapshot.snapshotMarks;
+		for (int i = 0; i < marks.length; i++)
+			if (marks[i] != 0)
+				markNiche(i, (marks[i] & 2) != 0);
+		if (snapshot.snapshotChanged)
+			changed = true;
 	}
 
 	/**
@@ -498,7 +1627,7 @@ public class XClassifierSet implements Serializable {
 	 */
 	/*
 	private XClassifier selectXClassifierRW(double fitSum) {
-		double choiceP = XCSConstants.random.nextDouble() * fitSum;
+		double choiceP = config.random.nextDouble() * fitSum;
 		int i = 0;
 		double sum = clSet[i].getFitness();
 		while (choiceP > sum) {
@@ -513,13 +1642,15 @@ public class XClassifierSet implements Serializable {
 	/**
 	 * Adds the classifier to the population and checks if an identical
 	 * classifier exists. If an identical classifier exists, its numerosity is
-	 * increased.
+	 * increased by the numerosity of the new classifier.
 	 * 
 	 * @see #getIdenticalClassifier
 	 * @param cl
 	 *            The to be added classifier.
+	 * @return the classifier now representing cl in the population, which is
+	 *         either cl itself or the identical classifier.
 	 */
-	private void addXClassifierToPopulation(XClassifier cl) {
+	private XClassifier addXClassifierToPopulation(XClassifier cl) {
 		// set pop to the actual population
 		XClassifierSet pop = this;
 		while (pop.parentSet != null)
@@ -527,11 +1658,11 @@ public class XClassifierSet implements Serializable {
 
 		XClassifier oldcl = null;
 		if ((oldcl = pop.getIdenticalClassifier(cl)) != null) {
-			oldcl.addNumerosity(1);
-		} else {
-			pop.addClassifier(cl);
+			oldcl.addNumerosity(cl.getNumerosity());
+			return oldcl;
 		}
-
+		pop.addClassifier(cl);
+		return cl;
 	}
 
 	/**
@@ -542,10 +1673,7 @@ public class XClassifierSet implements Serializable {
 	 * @return Returns the identical classifier if found, null otherwise.
 	 */
 	private XClassifier getIdenticalClassifier(XClassifier newCl) {
-		for (int i = 0; i < cllSize; i++)
-			if (newCl.equals(clSet[i]))
-				return clSet[i];
-		return null;
+		return identical.get(new ContentKey(newCl));
 	}
 
 	/**
@@ -554,43 +1682,85 @@ public class XClassifierSet implements Serializable {
 	 * vote. Returns the macro-classifier which got decreased by one
 	 * micro-classifier.
 	 * 
+	 * The wheel is spun on the deletion votes of the population, which are
+	 * exact for the current mean fitness without being recomputed, so
+	 * selecting and updating take logarithmic time.
+	 * 
 	 * @param state
 	 * 
 	 * @see XClassifier#getDelProp
+	 * @see DeletionVotes
 	 */
 	private XClassifier deleteFromPopulation(double[] state) {
-		double meanFitness = getFitnessSum() / (double) getNumerositySum();
-		double sum = 0.;
+		if (cllSize == 0)
+			return null;
 
-		for (int i = 0; i < cllSize; i++) {
-			sum += clSet[i].getDelProp(meanFitness);
+		int i = delVotes.draw(meanFitness(), cllSize, config.random);
+
+		while (clSet[i].match(state)
+				&& clSet[i].getNumerosity() == 1) {
+			if (i < cllSize - 1)
+				i++;
+			else
+				i = 0;
 		}
+		XClassifier cl = clSet[i];
+		cl.addNumerosity(-1);
+		if (cl.getNumerosity() == 0)
+			removeClassifier(i);
+		return cl;
+	}
 
-		boolean done = false;
+	/**
+	 * Deletes the given number of micro-classifiers from the population, one
+	 * roulette wheel selection each, as done when forming a match set finds
+	 * the population beyond maxPopSize. Can be used to shrink the population
+	 * at once after lowering maxPopSize.
+	 * 
+	 * @see #deleteFromPopulation(double[])
+	 * @param state
+	 *            The current state, single micro-classifiers matching it are
+	 *            spared.
+	 * @param count
+	 *            The number of micro-classifiers to delete, fewer if the
+	 *            population runs empty.
+	 */
+	public void deleteFromPopulation(double[] state, int count) {
+		XCSMetrics metrics = config.metrics;
+		boolean timed = metrics.isEnabled();
+		long start = timed ? System.nanoTime() : 0;
+		int n;
+		for (n = 0; n < count && cllSize > 0; n++)
+			deleteFromPopulation(state);
+		metrics.count(XCSMetrics.DELETIONS, n);
+		if (timed)
+			metrics.phase(XCSMetrics.DELETION, System.nanoTime() - start);
+	}
 
-		while (!done) {
-			double choicePoint = sum * XCSConstants.random.nextDouble();
-			sum = 0.;
+	/**
+	 * Returns the mean fitness of the micro-classifiers in the population.
+	 */
+	private double meanFitness() {
+		return getFitnessSum() / (double) getNumerositySum();
+	}
 
-			for (int i = 0; i < cllSize; i++) {
-				sum += clSet[i].getDelProp(meanFitness);
-				if (sum > choicePoint) {
-					while (clSet[i].match(state)
-							&& clSet[i].getNumerosity() == 1) {
-						if (i < cllSize - 1)
-							i++;
-						else
-							i = 0;
-					}
-					clSet[i].addNumerosity(-1);
-					if (clSet[i].getNumerosity() == 0)
-						removeClassifier(i);
-					return clSet[i];
-				}
-			}
-		}
+	/**
+	 * Sets the deletion vote of the classifier at the given position.
+	 */
+	private void setVote(int pos, XClassifier classifier) {
+		delVotes.set(pos, classifier.getActionSetSize(),
+				classifier.getNumerosity(), classifier.getFitness(),
+				classifier.getExperience(), meanFitness());
+	}
 
-		return null;
+	/**
+	 * Recomputes the deletion vote of a member classifier. Called by the
+	 * classifiers whenever their numerosity, fitness, experience or action set
+	 * size changes.
+	 */
+	void updateVote(XClassifier classifier) {
+		if (classifier.getHandle() >= 0)
+			setVote(classifier.getHandle(), classifier);
 	}
 
 	/**
@@ -614,6 +1784,138 @@ public class XClassifierSet implements Serializable {
 			clSet[i] = null;
 		}
 		cllSize -= copyStep;
+		if (copyStep > 0)
+			reindex();
+	}
+
+	/**
+	 * Closes the gaps left by removed (null) entries of a derived set in one
+	 * pass, keeping the order of the remaining classifiers.
+	 */
+	private void compact() {
+		compact(null, 0);
+	}
+
+	/**
+	 * Closes the gaps left by removed entries, which are null entries and, if
+	 * an index is given, the classifiers no longer in the index.
+	 * 
+	 * @return the number of entries removed before the given position.
+	 */
+	private int compact(OverlapIndex overlaps, int pos) {
+		int size = 0;
+		int removedBefore = 0;
+		for (int i = 0; i < cllSize; i++)
+			if (clSet[i] != null && (overlaps == null || overlaps.contains(clSet[i])))
+				clSet[size++] = clSet[i];
+			else if (i < pos)
+				removedBefore++;
+		for (int i = size; i < cllSize; i++)
+			clSet[i] = null;
+		if (size < cllSize)
+			actionStart = null;
+		cllSize = size;
+		return removedBefore;
+	}
+
+	/**
+	 * Rebuilds the packed copy of the population after the order of the
+	 * array returned by getSet() has been changed from outside.
+	 */
+	public void reindex() {
+		if (parentSet != null)
+			return;
+		// the statistics are still in the rows of the old positions
+		for (int i = 0; i < cllSize; i++)
+			if (clSet[i].getPopulation() == this)
+				clSet[i].detach();
+		rowLength = 0;
+		bounds = null;
+		bitRows = null;
+		actions = null;
+		for (int i = 0; i < cllSize; i++)
+			packRow(i, clSet[i]);
+		if (index != null) {
+			index.clear();
+			for (int i = 0; i < cllSize; i++)
+				index.add(clSet[i]);
+		}
+		identical.clear();
+		for (int i = 0; i < cllSize; i++)
+			identical.put(new ContentKey(clSet[i]), clSet[i]);
+		Arrays.fill(byActionSize, 0);
+		for (int i = 0; i < cllSize; i++)
+			addToAction(clSet[i]);
+		numerositySum = 0;
+		fitnessSum = 0.;
+		predictionSum = 0.;
+		for (int i = 0; i < cllSize; i++) {
+			clSet[i].attach(this, i);
+			updateSums(clSet[i].getNumerosity(), clSet[i].getFitness(),
+					clSet[i].getPrediction() * clSet[i].getNumerosity());
+		}
+		delVotes.reset();
+		for (int i = 0; i < cllSize; i++)
+			setVote(i, clSet[i]);
+	}
+
+	/**
+	 * Writes the condition and action of the classifier into the packed row
+	 * at the given position.
+	 */
+	private void packRow(int pos, XClassifier classifier) {
+		double[] elements = classifier.getElements();
+		long[] bits = classifier.getBits();
+		if (rowLength == 0) {
+			rowLength = elements.length;
+			actions = new int[clSet.length];
+			if (bits != null) {
+				bitRows = new long[clSet.length * bits.length];
+				stateBits = new long[bits.length / 2];
+			} else
+				bounds = new double[clSet.length * rowLength];
+		} else if (rowLength != elements.length) {
+			rowLength = -1;
+			bounds = null;
+			bitRows = null;
+			actions = null;
+		}
+		if (rowLength < 0)
+			return;
+
+		if (bitRows != null && bits == null) {
+			// the population is no longer binary, switch to interval rows
+			bitRows = null;
+			bounds = new double[clSet.length * rowLength];
+			for (int i = 0; i < pos; i++)
+				System.arraycopy(clSet[i].getElements(), 0, bounds, i * rowLength, rowLength);
+		}
+		if (bitRows != null)
+			System.arraycopy(bits, 0, bitRows, pos * bits.length, bits.length);
+		else
+			System.arraycopy(elements, 0, bounds, pos * rowLength, rowLength);
+		actions[pos] = classifier.getAction();
+	}
+
+	/**
+	 * Copies the packed row and the statistics at position from to position
+	 * to.
+	 */
+	private void moveRow(int from, int to) {
+		predictions[to] = predictions[from];
+		predictionErrors[to] = predictionErrors[from];
+		fitnesses[to] = fitnesses[from];
+		actionSetSizes[to] = actionSetSizes[from];
+		numerosities[to] = numerosities[from];
+		experiences[to] = experiences[from];
+		if (rowLength <= 0)
+			return;
+		if (bitRows != null) {
+			int words = 2 * stateBits.length;
+			System.arraycopy(bitRows, from * words, bitRows, to * words, words);
+		} else
+			System.arraycopy(bounds, from * rowLength, bounds, to * rowLength, rowLength);
+		actions[to] = actions[from];
 	}
 
 	/**
@@ -624,6 +1926,20 @@ public class XClassifierSet implements Serializable {
 	 *            The to be added classifier.
 	 */
 	void addClassifier(XClassifier classifier) {
+		if (parentSet == null) {
+			packRow(cllSize, classifier);
+			if (index != null)
+				index.add(classifier);
+			identical.put(new ContentKey(classifier), classifier);
+			classifier.attach(this, cllSize);
+			addToAction(classifier);
+			if (classifier.isDirty())
+				markNiche(classifier.getAction(), false);
+			setVote(cllSize, classifier);
+			updateSums(classifier.getNumerosity(), classifier.getFitness(),
+					classifier.getPrediction() * classifier.getNumerosity());
+		} else
+			actionStart = null;
 		clSet[cllSize] = classifier;
 		cllSize++;
 	}
@@ -636,6 +1952,11 @@ public class XClassifierSet implements Serializable {
 	 * done manually where required.
 	 */
 	public boolean removeClassifier(XClassifier classifier) {
+		if (parentSet == null) {
+			if (classifier.getPopulation() != this)
+				return false;
+			return removeClassifier(classifier.getHandle());
+		}
 		int i;
 		for (i = 0; i < cllSize; i++)
 			if (clSet[i] == classifier)
@@ -643,6 +1964,7 @@ public class XClassifierSet implements Serializable {
 		if (i == cllSize) {
 			return false;
 		}
+		actionStart = null;
 		for (; i < cllSize - 1; i++)
 			clSet[i] = clSet[i + 1];
 		clSet[i] = null;
@@ -658,8 +1980,36 @@ public class XClassifierSet implements Serializable {
 	 * found and removed and false otherwise. It does not update the numerosity
 	 * of the set, neither recursively remove classifiers in the parent set.
 	 * This must be done manually where required.
+	 * 
+	 * In the population the last classifier is moved into the freed position,
+	 * so the removal takes constant time; derived sets keep their order.
 	 */
 	public boolean removeClassifier(int pos) {
+		if (parentSet == null) {
+			XClassifier classifier = clSet[pos];
+			if (index != null)
+				index.remove(classifier);
+			identical.remove(new ContentKey(classifier), classifier);
+			if (classifier.getExperience() > 0)
+				markNiche(classifier.getAction(), true);
+			leave(classifier);
+			classifier.setHandle(-1);
+			removeFromAction(classifier);
+
+			int last = cllSize - 1;
+			if (pos != last) {
+				clSet[pos] = clSet[last];
+				clSet[pos].setHandle(pos);
+				moveRow(last, pos);
+				delVotes.clear(pos);
+				delVotes.move(last, pos);
+			} else
+				delVotes.clear(last);
+			clSet[last] = null;
+			cllSize--;
+			return true;
+		}
+		actionStart = null;
 		int i;
 		for (i = pos; i < cllSize - 1; i++)
 			clSet[i] = clSet[i + 1];
@@ -669,10 +2019,105 @@ public class XClassifierSet implements Serializable {
 		return true;
 	}
 
+	/**
+	 * Adds the classifier to the members of its action in the population.
+	 */
+	private void addToAction(XClassifier classifier) {
+		int action = classifier.getAction();
+		if (action >= byAction.length) {
+			byAction = Arrays.copyOf(byAction, action + 1);
+			byActionSize = Arrays.copyOf(byActionSize, action + 1);
+		}
+		XClassifier[] members = byAction[action];
+		if (members == null)
+			members = byAction[action] = new XClassifier[16];
+		else if (byActionSize[action] == members.length)
+			members = byAction[action] = Arrays.copyOf(members, 2 * members.length);
+		classifier.setActionHandle(byActionSize[action]);
+		members[byActionSize[action]++] = classifier;
+	}
+
+	/**
+	 * Removes the classifier from the members of its action in the
+	 * population, moving the last member into its place.
+	 */
+	private void removeFromAction(XClassifier classifier) {
+		int action = classifier.getAction();
+		int pos = classifier.getActionHandle();
+		XClassifier[] members = byAction[action];
+		int last = --byActionSize[action];
+		if (pos != last) {
+			members[pos] = members[last];
+			members[pos].setActionHandle(pos);
+		}
+		members[last] = null;
+		classifier.setActionHandle(-1);
+	}
+
+	/**
+	 * Takes the classifier out of the sums of the population.
+	 */
+	private void leave(XClassifier classifier) {
+		updateSums(-classifier.getNumerosity(), -classifier.getFitness(),
+				-classifier.getPrediction() * classifier.getNumerosity());
+		classifier.detach();
+	}
+
+	/**
+	 * Adds the given changes of a member classifier to the sums of the
+	 * population. Called by the classifiers whenever their numerosity, fitness
+	 * or prediction changes.
+	 * 
+	 * @param numerosity
+	 *            The change of the numerosity.
+	 * @param fitness
+	 *            The change of the fitness.
+	 * @param prediction
+	 *            The change of prediction times numerosity.
+	 */
+	void updateSums(int numerosity, double fitness, double prediction) {
+		numerositySum += numerosity;
+		fitnessSum += fitness;
+		predictionSum += prediction;
+	}
+
+	/**
+	 * Cross-checks the incrementally maintained sums of the population against
+	 * a full recomputation. Deviations are reported to the error stream and the
+	 * recomputed values are taken over.
+	 * 
+	 * @return true if the sums were consistent.
+	 */
+	public boolean verifySums() {
+		int num = 0;
+		double fit = 0., pred = 0.;
+		for (int i = 0; i < cllSize; i++) {
+			num += clSet[i].getNumerosity();
+			fit += clSet[i].getFitness();
+			pred += clSet[i].getPrediction() * clSet[i].getNumerosity();
+		}
+		boolean consistent = num == numerositySum
+				&& Math.abs(fit - fitnessSum) <= 1e-6 * Math.max(1., Math.abs(fit))
+				&& Math.abs(pred - predictionSum) <= 1e-6 * Math.max(1., Math.abs(pred));
+		if (!consistent) {
+			System.err.println("Inconsistent population sums: num " + numerositySum + "/" + num
+					+ " fit " + fitnessSum + "/" + fit + " pred " + predictionSum + "/" + pred);
+			numerositySum = num;
+			fitnessSum = fit;
+			predictionSum = pred;
+		}
+		return consistent;
+	}
+
 	/**
 	 * Returns the sum of the prediction values of all classifiers in the set.
 	 */
 	private double getPredictionSum() {
+		if (parentSet == null) {
+			if (config.checkSums)
+				verifySums();
+			return predictionSum;
+		}
 		double sum = 0.;
 
 		for (int i = 0; i < cllSize; i++) {
@@ -685,6 +2130,11 @@ public class XClassifierSet implements Serializable {
 	 * Returns the sum of the fitnesses of all classifiers in the set.
 	 */
 	private double getFitnessSum() {
+		if (parentSet == null) {
+			if (config.checkSums)
+				verifySums();
+			return fitnessSum;
+		}
 		double sum = 0.;
 
 		for (int i = 0; i < cllSize; i++)
@@ -692,21 +2142,26 @@ public class XClassifierSet implements Serializable {
 		return sum;
 	}
 
+	/**
+	 * Returns the number of classifiers the population removed for their
+	 * prediction error since it was created.
+	 */
+	public int getDeletionCount() {
+		return deletions;
+	}
+
 	/**
 	 * Returns the number of micro-classifiers in the set.
 	 */
 	public int getNumerositySum() {
-		// return numerositySum;
-		if (clSet == null) {
-			return 0;
+		if (parentSet == null) {
+			if (config.checkSums)
+				verifySums();
+			return numerositySum;
 		}
 		int num = 0;
-		for (int i=0; i<clSet.length; i++) {
-			if (clSet[i] == null) {
-				continue;
-			}
+		for (int i=0; i<cllSize; i++)
 			num += Math.abs(clSet[i].getNumerosity());
-		}
 		return num;
 	}
 